@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+
+/**
+ * AdaptiveModel object holds the CodeTable of an adaptive (one-pass) compressed stream.
+ * Frequencies are counted while characters are encoded (or decoded) and the CodeTable
+ * is rebuilt from them every rebuildInterval characters. The encoder and the decoder
+ * update their own AdaptiveModel with the same characters, so both always use the same
+ * CodeTable and no CodeTable has to be stored in the stream
+ */
+public class AdaptiveModel {
+    // static attributes
+    // character marking a flush (the rest of the byte is padding)
+    public static final int FLUSH_SYMBOL = HuffmanCompress.CHARACTER_COUNT;
+    // character marking the end of the stream
+    public static final int END_SYMBOL = FLUSH_SYMBOL + 1;
+    // number of characters (byte values, FLUSH_SYMBOL and END_SYMBOL)
+    public static final int SYMBOL_COUNT = END_SYMBOL + 1;
+    // default number of characters between two rebuilds of the CodeTable
+    public static final int DEFAULT_REBUILD_INTERVAL = 16 * 1024;
+    // maximum length of a binary value (keeps decoding a character short)
+    private static final int MAX_CODE_LENGTH = 16;
+    // frequencies are halved once their total reaches this (older content weighs less)
+    private static final int MAX_TOTAL_FREQUENCY = 1 << 20;
+
+    // instance attributes
+    // frequency of each character counted so far
+    private final int[] frequencyList = new int[SYMBOL_COUNT];
+    // total of frequencyList
+    private int totalFrequency;
+    // number of characters between two rebuilds
+    private final int rebuildInterval;
+    // number of characters since the last rebuild
+    private int sinceRebuild;
+    // current CodeTable
+    private CodeTable codeTable;
+    // canonical decoding: number of binary values, first binary value and
+    // index of the first character (in sortedCharacters) of each length
+    private final int[] lengthCount = new int[MAX_CODE_LENGTH + 1];
+    private final int[] firstCode = new int[MAX_CODE_LENGTH + 1];
+    private final int[] firstIndex = new int[MAX_CODE_LENGTH + 1];
+    // characters in order of binary value length, then character
+    private final int[] sortedCharacters = new int[SYMBOL_COUNT];
+
+    /**
+     * Used to count a character that was just encoded (or decoded),
+     * rebuilding the CodeTable every rebuildInterval characters
+     *
+     * @param symbol encoded character
+     */
+    public void update(int symbol) {
+        frequencyList[symbol]++;
+        totalFrequency++;
+        if (++sinceRebuild == rebuildInterval)
+            rebuild();
+    }
+
+    /**
+     * Used to find the character of a canonical binary value
+     *
+     * @param length number of bits read so far
+     * @param code bits read so far
+     * @return character with the given binary value, -1 if no binary value matches yet
+     */
+    public int getSymbol(int length, int code) {
+        int index = code - firstCode[length];
+        if (index < 0 || index >= lengthCount[length])
+            return -1;
+        return sortedCharacters[firstIndex[length] + index];
+    }
+
+    /**
+     * Rebuilds the CodeTable (and the canonical decoding arrays) from the counted frequencies
+     */
+    private void rebuild() {
+        sinceRebuild = 0;
+        if (totalFrequency >= MAX_TOTAL_FREQUENCY) { // aging the frequencies
+            totalFrequency = 0;
+            for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++)
+                totalFrequency += frequencyList[symbol] = Math.max(1, frequencyList[symbol] / 2);
+        }
+        int[] lengths = HuffmanCompress.setCodeLengths(frequencyList, MAX_CODE_LENGTH);
+        codeTable = CodeTable.fromLengths(lengths);
+
+        // counting the binary values of each length
+        Arrays.fill(lengthCount, 0);
+        for (int length : lengths)
+            lengthCount[length]++;
+        lengthCount[0] = 0;
+
+        // first binary value and first index of each length (as assigned by CodeTable.fromLengths)
+        int code = 0;
+        int index = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            firstCode[length] = code;
+            firstIndex[length] = index;
+            index += lengthCount[length];
+        }
+        int[] nextIndex = firstIndex.clone();
+        for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++) {
+            if (lengths[symbol] > 0)
+                sortedCharacters[nextIndex[lengths[symbol]]++] = symbol;
+        }
+    }
+
+    /**
+     * Constructor for AdaptiveModel object.
+     * Every character starts with a frequency of 1, so that any character can be encoded
+     *
+     * @param rebuildInterval number of characters between two rebuilds of the CodeTable
+     */
+    public AdaptiveModel(int rebuildInterval) {
+        if (rebuildInterval <= 0)
+            throw new IllegalArgumentException("Rebuild interval should be positive");
+        this.rebuildInterval = rebuildInterval;
+        Arrays.fill(frequencyList, 1);
+        totalFrequency = SYMBOL_COUNT;
+        rebuild();
+    }
+
+    // getter methods
+    public CodeTable getCodeTable() { return codeTable; }
+    public int getMaxLength() { return MAX_CODE_LENGTH; }
+    public int getRebuildInterval() { return rebuildInterval; }
+}
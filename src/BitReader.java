@@ -0,0 +1,115 @@
+import java.nio.ByteBuffer;
+
+
+/**
+ * BitReader object is used to read encodedBytes bit by bit
+ * (most significant bit first) without converting them into a String
+ */
+public class BitReader {
+    // instance attributes
+    // encodedBytes to read from (heap or memory mapped)
+    private ByteBuffer encodedBytes;
+    // index of the next byte to be loaded into bitBuffer
+    private int bytePosition;
+    // index after the last byte that can be loaded
+    private int byteLimit;
+    // bits loaded ahead of the current position (aligned to the left)
+    private long bitBuffer;
+    // number of bits currently loaded in bitBuffer
+    private int bitCount;
+    // number of bits consumed so far
+    private long bitPosition;
+
+    /**
+     * Used to look at the next bits without consuming them.
+     * Bits past the end of encodedBytes are read as 0s
+     *
+     * @param length number of bits to look at (1 to 57)
+     * @return next bits, aligned to the right
+     */
+    public long peekBits(int length) {
+        if (bitCount < length)
+            refill(); // loading more bytes into bitBuffer
+        return bitBuffer >>> (Long.SIZE - length);
+    }
+
+    /**
+     * Used to consume the given number of bits
+     * @param length number of bits to consume (at most the number of peeked bits)
+     */
+    public void skipBits(int length) {
+        bitBuffer <<= length;
+        bitCount -= length;
+        bitPosition += length;
+    }
+
+    /**
+     * Used to read (peek and consume) the next bits
+     * @param length number of bits to read (1 to 57)
+     * @return read bits, aligned to the right
+     */
+    public long readBits(int length) {
+        long bits = peekBits(length);
+        skipBits(length);
+        return bits;
+    }
+
+    /**
+     * Loads whole bytes into bitBuffer until it holds at least 57 bits
+     */
+    private void refill() {
+        while (bitCount <= Long.SIZE - Byte.SIZE) {
+            // 0s are loaded once byteLimit is reached
+            long nextByte = bytePosition < byteLimit ? encodedBytes.get(bytePosition++) & 0xFF : 0;
+            bitBuffer |= nextByte << (Long.SIZE - Byte.SIZE - bitCount);
+            bitCount += Byte.SIZE;
+        }
+    }
+
+    /**
+     * Constructor for BitReader object
+     * @param encodedBytes encodedBytes to read from
+     */
+    public BitReader(byte[] encodedBytes) {
+        this(encodedBytes, 0, encodedBytes.length);
+    }
+
+    /**
+     * Constructor for BitReader object reading part of the given array
+     * @param encodedBytes encodedBytes to read from
+     * @param offset index of the first byte to read
+     * @param length number of bytes to read
+     */
+    public BitReader(byte[] encodedBytes, int offset, int length) {
+        this(ByteBuffer.wrap(encodedBytes, offset, length));
+    }
+
+    /**
+     * Constructor for BitReader object reading the remaining bytes of given buffer
+     * (from its position to its limit, the buffer itself is not modified)
+     *
+     * @param encodedBytes buffer to read from
+     */
+    public BitReader(ByteBuffer encodedBytes) {
+        reset(encodedBytes, encodedBytes.position(), encodedBytes.limit());
+    }
+
+    /**
+     * Used to reuse the BitReader on part of given buffer (the buffer itself is not modified)
+     *
+     * @param encodedBytes buffer to read from
+     * @param from index of the first byte to read
+     * @param to index after the last byte to read
+     */
+    public void reset(ByteBuffer encodedBytes, int from, int to) {
+        this.encodedBytes = encodedBytes;
+        this.bytePosition = from;
+        this.byteLimit = to;
+        bitBuffer = 0;
+        bitCount = 0;
+        bitPosition = 0;
+    }
+
+    // getter method for bitPosition
+    public long getBitPosition() { return bitPosition; }
+}
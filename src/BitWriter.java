@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * BitWriter object is used to pack binary values into bytes
+ * (most significant bit first) without building a '0'/'1' String.
+ * Bits are collected in a 64-bit accumulator and written out a whole word at a time
+ */
+public class BitWriter {
+    // instance attributes
+    // packed bytes written so far
+    private byte[] encodedBytes;
+    // number of bytes written to encodedBytes
+    private int bytePosition;
+    // bits that are not written yet (aligned to the left)
+    private long bitBuffer;
+    // number of bits in bitBuffer
+    private int bitCount;
+
+    /**
+     * Used to append a binary value
+     * @param bits binary value (aligned to the right, no bits above length set)
+     * @param length number of bits in the binary value (0 to 64)
+     */
+    public void writeBits(long bits, int length) {
+        int freeBits = Long.SIZE - bitCount;
+        if (length < freeBits) { // binary value fits into bitBuffer
+            bitBuffer |= bits << (freeBits - length);
+            bitCount += length;
+        } else {
+            // filling up bitBuffer, writing it as a whole word
+            // and keeping the remaining bits of the binary value
+            writeWord(bitBuffer | bits >>> (length - freeBits));
+            bitCount = length - freeBits;
+            bitBuffer = bitCount == 0 ? 0 : bits << (Long.SIZE - bitCount);
+        }
+    }
+
+    /**
+     * Used to write the remaining bits, adding 0s until the last byte is complete
+     * @return number of 0s added to the last byte
+     */
+    public int finish() {
+        int extra0s = (Byte.SIZE - bitCount % Byte.SIZE) % Byte.SIZE;
+        int remainingBytes = (bitCount + extra0s) / Byte.SIZE;
+        ensureCapacity(remainingBytes);
+
+        for (int i = 0; i < remainingBytes; i++) {
+            encodedBytes[bytePosition++] = (byte) (bitBuffer >>> (Long.SIZE - Byte.SIZE));
+            bitBuffer <<= Byte.SIZE;
+        }
+        bitBuffer = 0;
+        bitCount = 0;
+        return extra0s;
+    }
+
+    /**
+     * Writes given word into encodedBytes (8 bytes, most significant first)
+     * @param word word to write
+     */
+    private void writeWord(long word) {
+        ensureCapacity(Long.BYTES);
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE)
+            encodedBytes[bytePosition++] = (byte) (word >>> shift);
+    }
+
+    /**
+     * Ensures encodedBytes can hold the given number of additional bytes
+     * @param extraBytes number of bytes to be written
+     */
+    private void ensureCapacity(int extraBytes) {
+        if (bytePosition + extraBytes > encodedBytes.length)
+            encodedBytes = Arrays.copyOf(encodedBytes,
+                    Math.max(bytePosition + extraBytes, encodedBytes.length * 2));
+    }
+
+    /**
+     * Used to write the bytes written so far into given stream
+     * (bits still in bitBuffer are not included)
+     *
+     * @param out stream to write into
+     * @throws IOException if the stream can not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(encodedBytes, 0, bytePosition);
+    }
+
+    /**
+     * Used to write the bytes written so far into given buffer
+     * (bits still in bitBuffer are not included)
+     *
+     * @param out buffer to write into (its position is moved past the written bytes)
+     */
+    public void writeTo(ByteBuffer out) {
+        out.put(encodedBytes, 0, bytePosition);
+    }
+
+    /**
+     * Used to write the whole bytes written so far into given stream and remove them,
+     * keeping the bits still in bitBuffer (so that writing can go on)
+     *
+     * @param out stream to write into
+     * @throws IOException if the stream can not be written
+     */
+    public void drainTo(OutputStream out) throws IOException {
+        out.write(encodedBytes, 0, bytePosition);
+        bytePosition = 0;
+    }
+
+    /**
+     * Used to reuse the BitWriter, keeping the already allocated encodedBytes
+     * @param capacity expected number of bytes to write
+     */
+    public void reset(int capacity) {
+        ensureCapacity(capacity - bytePosition);
+        bytePosition = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+    }
+
+    /**
+     * @return bytes written so far (bits still in bitBuffer are not included)
+     */
+    public byte[] toByteArray() {
+        if (bytePosition == encodedBytes.length)
+            return encodedBytes; // already the exact size, no copy needed
+        return Arrays.copyOf(encodedBytes, bytePosition);
+    }
+
+    /**
+     * Constructor for BitWriter object
+     * @param capacity expected number of bytes to write
+     */
+    public BitWriter(int capacity) {
+        encodedBytes = new byte[Math.max(capacity, Long.BYTES)];
+    }
+
+    // getter method for the number of written bytes
+    public int getBytePosition() { return bytePosition; }
+}
@@ -0,0 +1,193 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * BlockIndex object records where every block of a compressed stream is stored.
+ * It is written after the end of the stream, so that blocks
+ * (and their CodeTables, stored at the start of each block) can be found without
+ * reading the blocks before them:
+ * - block count (int)
+ * - each block: offset (long), compressed length (int), raw length (int)
+ * - trailer: offset of the index (long), INDEX_MAGIC (int)
+ * Blocks that refer to the CodeTable of the block before them (see HuffmanBlock.REPEAT_BLOCK)
+ * can not be decoded on their own: the index of such a chained stream ends with CHAINED_MAGIC,
+ * which readFrom does not take for an index, so the stream is decoded in order
+ */
+public class BlockIndex {
+    // static attributes
+    // last 4 bytes of a compressed stream with an index ("HUFI")
+    public static final int INDEX_MAGIC = 0x48554649;
+    // last 4 bytes of a chained compressed stream ("HUFC")
+    public static final int CHAINED_MAGIC = 0x48554643;
+    // number of bytes of each block entry
+    private static final int ENTRY_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    // number of bytes of the trailer
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    // instance attributes
+    // true if blocks may refer to the CodeTable of the block before them
+    private final boolean chained;
+    // offset of each block in the compressed stream
+    private long[] offsets = new long[16];
+    // compressed length of each block (in bytes)
+    private int[] compressedLengths = new int[16];
+    // raw (uncompressed) length of each block (in bytes)
+    private int[] rawLengths = new int[16];
+    // offset of each block in the uncompressed content
+    private long[] rawOffsets = new long[16];
+    // number of recorded blocks
+    private int blockCount;
+    // offset in the compressed stream after the last recorded block
+    private long position;
+    // total raw length of the recorded blocks
+    private long rawPosition;
+
+    /**
+     * Used to record the next block of the compressed stream
+     * @param compressedLength number of bytes the block takes in the compressed stream
+     * @param rawLength number of bytes the block decompresses into
+     */
+    public void addBlock(int compressedLength, int rawLength) {
+        if (blockCount == offsets.length) { // growing the arrays
+            offsets = Arrays.copyOf(offsets, blockCount * 2);
+            compressedLengths = Arrays.copyOf(compressedLengths, blockCount * 2);
+            rawLengths = Arrays.copyOf(rawLengths, blockCount * 2);
+            rawOffsets = Arrays.copyOf(rawOffsets, blockCount * 2);
+        }
+        offsets[blockCount] = position;
+        compressedLengths[blockCount] = compressedLength;
+        rawLengths[blockCount] = rawLength;
+        rawOffsets[blockCount] = rawPosition;
+        blockCount++;
+
+        position += compressedLength;
+        rawPosition += rawLength;
+    }
+
+    /**
+     * Used to account for bytes in the compressed stream that do not belong to a block
+     * @param length number of bytes to skip
+     */
+    public void skip(int length) {
+        position += length;
+    }
+
+    /**
+     * Used to find the block holding a byte of the uncompressed content
+     * @param rawOffset offset of the byte in the uncompressed content (0 to getTotalRawLength() - 1)
+     * @return block holding the byte
+     */
+    public int findBlock(long rawOffset) {
+        int block = Arrays.binarySearch(rawOffsets, 0, blockCount, rawOffset);
+        return block >= 0 ? block : -block - 2; // last block starting before rawOffset
+    }
+
+    /**
+     * Used to write the index (to be called right after the end of the stream)
+     * @param out stream to write into
+     * @throws IOException if the stream can not be written
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            out.writeLong(offsets[i]);
+            out.writeInt(compressedLengths[i]);
+            out.writeInt(rawLengths[i]);
+        }
+        out.writeLong(position); // index starts where the recorded stream ends
+        out.writeInt(chained ? CHAINED_MAGIC : INDEX_MAGIC);
+    }
+
+    /**
+     * Used to skip an index when reading a compressed stream sequentially
+     * @param in stream positioned right after the end of the stream
+     * @throws IOException if the stream can not be read
+     */
+    public static void skipIndex(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        in.skipNBytes((long) count * ENTRY_BYTES + TRAILER_BYTES);
+    }
+
+    /**
+     * Used to read the index stored at the end of a compressed file
+     * @param channel channel of the compressed file
+     * @return read BlockIndex, null if the file has no index (or is chained)
+     * @throws IOException if the file can not be read or its index is not valid
+     */
+    public static BlockIndex readFrom(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_BYTES + Integer.BYTES)
+            return null;
+
+        ByteBuffer trailer = readFully(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != INDEX_MAGIC || indexOffset < 0 || indexOffset > size - TRAILER_BYTES)
+            return null;
+
+        long indexLength = size - TRAILER_BYTES - indexOffset;
+        if (indexLength < Integer.BYTES || indexLength > Integer.MAX_VALUE)
+            throw new IOException("invalid block index in given file");
+        ByteBuffer entries = readFully(channel, indexOffset, (int) indexLength);
+        BlockIndex index = new BlockIndex();
+        int count = entries.getInt();
+        if (count < 0 || entries.remaining() != (long) count * ENTRY_BYTES)
+            throw new IOException("invalid block index in given file");
+        for (int i = 0; i < count; i++) {
+            // blocks follow each other (raw offsets are added up by addBlock) and end before the index
+            long offset = entries.getLong();
+            int compressedLength = entries.getInt();
+            int rawLength = entries.getInt();
+            if (offset < 0 || i > 0 && offset != index.position || compressedLength <= 0 || rawLength <= 0
+                    || offset > indexOffset - compressedLength)
+                throw new IOException("invalid block index in given file");
+            index.position = offset;
+            index.addBlock(compressedLength, rawLength);
+        } return index;
+    }
+
+    /**
+     * Reads the given part of a file
+     *
+     * @param channel channel of the file
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     * @return buffer containing the read bytes (ready to be read)
+     * @throws IOException if the file can not be read
+     */
+    static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of the file");
+        } return buffer.flip();
+    }
+
+    /**
+     * Constructor for BlockIndex object of a stream whose blocks are decoded on their own
+     */
+    public BlockIndex() {
+        this(false);
+    }
+
+    /**
+     * Constructor for BlockIndex object
+     * @param chained true if blocks may refer to the CodeTable of the block before them
+     */
+    public BlockIndex(boolean chained) {
+        this.chained = chained;
+    }
+
+    // getter methods
+    public boolean isChained() { return chained; }
+    public int getBlockCount() { return blockCount; }
+    public long getOffset(int block) { return offsets[block]; }
+    public int getCompressedLength(int block) { return compressedLengths[block]; }
+    public int getRawLength(int block) { return rawLengths[block]; }
+    public long getRawOffset(int block) { return rawOffsets[block]; }
+    public long getTotalRawLength() { return rawPosition; }
+}
@@ -0,0 +1,282 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * CodeTable object stores the binary value of every character
+ * in dense arrays indexed by the character itself, so that
+ * looking up a binary value does not depend on the number of characters
+ */
+public class CodeTable {
+    // static attribute
+    // longest binary value that can be stored (limited by BitReader and BitWriter)
+    public static final int MAX_LENGTH = 57;
+
+    // instance attributes
+    // binary value of each character as bits (aligned to the right)
+    private final long[] codes;
+    // length of the binary value of each character (0 -> character has no binary value)
+    private final int[] lengths;
+
+    /**
+     * Used to assign the binary value of a character
+     *
+     * @param symbol character to assign
+     * @param code binary value as bits (aligned to the right)
+     * @param length length of the binary value
+     */
+    public void setCode(int symbol, long code, int length) {
+        codes[symbol] = code;
+        lengths[symbol] = length;
+    }
+
+    /**
+     * @return length of the longest binary value
+     */
+    public int getMaxLength() {
+        int maxLength = 0;
+        for (int length : lengths)
+            maxLength = Math.max(maxLength, length);
+        return maxLength;
+    }
+
+    /**
+     * Used to get the binary value of a character as a '0'/'1' String
+     * @param symbol character to refer to
+     * @return binary value String (empty if the character has no binary value)
+     */
+    public String getPointer(int symbol) {
+        char[] pointer = new char[lengths[symbol]];
+        for (int i = 0; i < pointer.length; i++)
+            pointer[i] = (codes[symbol] >>> (pointer.length - 1 - i) & 1) == 0 ? '0' : '1';
+        return new String(pointer);
+    }
+
+    /**
+     * Used to calculate the number of bits needed to encode given frequencyList
+     * @param frequencyList frequency of each character
+     * @return total number of encoded bits
+     */
+    public long getEncodedLength(int[] frequencyList) {
+        long bitLength = 0;
+        for (int symbol = 0; symbol < frequencyList.length; symbol++)
+            bitLength += (long) frequencyList[symbol] * lengths[symbol];
+        return bitLength;
+    }
+
+    /**
+     * Used to write the CodeTable into a compressed stream.
+     * Binary values are canonical, so only their lengths are written:
+     * number of stored lengths (up to the last character with a binary value),
+     * followed by one length byte per character
+     *
+     * @param out stream to write into
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    public int writeTo(DataOutputStream out) throws IOException {
+        int count = getStoredCount();
+        out.writeShort(count);
+
+        for (int symbol = 0; symbol < count; symbol++)
+            out.writeByte(lengths[symbol]);
+        return Short.BYTES + count;
+    }
+
+    /**
+     * Used to write the CodeTable into a buffer (same content as writeTo a stream)
+     *
+     * @param out buffer to write into (its position is moved past the CodeTable)
+     * @return number of bytes written
+     */
+    public int writeTo(ByteBuffer out) {
+        int count = getStoredCount();
+        out.putShort((short) count);
+
+        for (int symbol = 0; symbol < count; symbol++)
+            out.put((byte) lengths[symbol]);
+        return Short.BYTES + count;
+    }
+
+    /**
+     * @return number of bytes written by writeTo
+     */
+    public int getStoredLength() {
+        return Short.BYTES + getStoredCount();
+    }
+
+    /**
+     * @return number of stored lengths (trailing characters without a binary value are not written)
+     */
+    private int getStoredCount() {
+        int count = lengths.length;
+        while (count > 0 && lengths[count - 1] == 0)
+            count--;
+        return count;
+    }
+
+    /**
+     * Used to read a CodeTable written by writeTo (rebuilding its canonical binary values)
+     *
+     * @param in stream to read from
+     * @param symbolCount number of possible characters
+     * @return read CodeTable
+     * @throws IOException if the stream can not be read or is not in the expected format
+     */
+    public static CodeTable readFrom(DataInputStream in, int symbolCount) throws IOException {
+        int count = in.readUnsignedShort();
+        if (count > symbolCount)
+            throw new IOException("invalid code table in given stream");
+
+        int[] lengths = new int[symbolCount];
+        for (int symbol = 0; symbol < count; symbol++)
+            lengths[symbol] = in.readUnsignedByte();
+        return fromStoredLengths(lengths);
+    }
+
+    /**
+     * Used to read a CodeTable written by writeTo from a buffer (heap or memory mapped)
+     *
+     * @param in buffer to read from (its position is moved past the CodeTable)
+     * @param symbolCount number of possible characters
+     * @return read CodeTable
+     * @throws IOException if the buffer is not in the expected format
+     */
+    public static CodeTable readFrom(ByteBuffer in, int symbolCount) throws IOException {
+        int count = in.remaining() < Short.BYTES ? -1 : in.getShort() & 0xFFFF;
+        if (count < 0 || count > symbolCount || count > in.remaining())
+            throw new IOException("invalid code table in given stream");
+
+        int[] lengths = new int[symbolCount];
+        for (int symbol = 0; symbol < count; symbol++)
+            lengths[symbol] = in.get() & 0xFF;
+        return fromStoredLengths(lengths);
+    }
+
+    /**
+     * Builds the CodeTable of lengths read from a stream
+     * @param lengths read length of the binary value of each character
+     * @return constructed CodeTable
+     * @throws IOException if the lengths do not form a valid prefix code
+     */
+    private static CodeTable fromStoredLengths(int[] lengths) throws IOException {
+        try {
+            return fromLengths(lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid code table in given stream");
+        }
+    }
+
+    /**
+     * Used to build a CodeTable with canonical binary values from the length of each binary value.
+     * Binary values are assigned in order of length, then character, each one
+     * being the previous binary value + 1 (shifted left when the length grows),
+     * so that the lengths alone are enough to rebuild the same CodeTable
+     *
+     * @param lengths length of the binary value of each character (0 -> no binary value)
+     * @return constructed CodeTable
+     * @throws IllegalArgumentException if the lengths do not form a valid prefix code
+     */
+    public static CodeTable fromLengths(int[] lengths) {
+        CodeTable codeTable = new CodeTable(lengths.length);
+        codeTable.setCanonicalCodes(lengths, new long[MAX_LENGTH + 1]);
+        return codeTable;
+    }
+
+    /**
+     * Used to replace every binary value of the CodeTable with the canonical binary values
+     * of given lengths (see fromLengths), so that a CodeTable can be reused without allocating
+     *
+     * @param lengths length of the binary value of each character (as many as the CodeTable has)
+     * @param nextCode work array of at least MAX_LENGTH + 1 elements (overwritten)
+     * @throws IllegalArgumentException if the lengths do not form a valid prefix code
+     */
+    public void setCanonicalCodes(int[] lengths, long[] nextCode) {
+        if (lengths.length != this.lengths.length)
+            throw new IllegalArgumentException("expected " + this.lengths.length + " binary value lengths");
+        int maxLength = 0;
+        for (int length : lengths) {
+            if (length < 0 || length > MAX_LENGTH)
+                throw new IllegalArgumentException("invalid binary value length " + length);
+            maxLength = Math.max(maxLength, length);
+        }
+
+        // number of binary values of each length
+        Arrays.fill(nextCode, 0, maxLength + 1, 0);
+        for (int length : lengths)
+            nextCode[length]++;
+
+        // first binary value of each length (replacing the counts)
+        long code = 0, previousCount = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            long count = nextCode[length];
+            code = (code + previousCount) << 1;
+            nextCode[length] = code;
+            previousCount = count;
+        }
+
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) {
+                setCode(symbol, 0, 0);
+                continue;
+            }
+            if (nextCode[length] >= 1L << length) // more binary values than the length allows
+                throw new IllegalArgumentException("binary value lengths do not form a prefix code");
+            setCode(symbol, nextCode[length]++, length);
+        }
+    }
+
+    /**
+     * @return copy of the length of each binary value
+     */
+    public int[] getLengths() {
+        return lengths.clone();
+    }
+
+    /**
+     * @return list of characters and their binary value Strings (in character order)
+     */
+    public ArrayList<Node> toNodeList() {
+        ArrayList<Node> binaryValueList = new ArrayList<>();
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] > 0)
+                binaryValueList.add(new Node((char) symbol, getPointer(symbol)));
+        } return binaryValueList;
+    }
+
+    /**
+     * Used to build a CodeTable from a list of characters and their binary value Strings
+     *
+     * @param binaryValueList binaryValueList to refer to
+     * @param symbolCount number of possible characters
+     * @return constructed CodeTable
+     */
+    public static CodeTable fromNodeList(ArrayList<Node> binaryValueList, int symbolCount) {
+        CodeTable codeTable = new CodeTable(symbolCount);
+        for (Node node : binaryValueList) {
+            // the first binary value of a character is kept
+            if (codeTable.getLength(node.getValue()) == 0)
+                codeTable.setCode(node.getValue(),
+                        Long.parseLong(node.getPointer(), 2), node.getPointer().length());
+        } return codeTable;
+    }
+
+    /**
+     * Constructor for CodeTable object
+     * @param symbolCount number of possible characters
+     */
+    public CodeTable(int symbolCount) {
+        codes = new long[symbolCount];
+        lengths = new int[symbolCount];
+    }
+
+    // getter methods
+    public long getCode(int symbol) { return codes[symbol]; }
+    public int getLength(int symbol) { return lengths[symbol]; }
+    public int getSymbolCount() { return lengths.length; }
+}
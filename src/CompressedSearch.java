@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * CompressedSearch object finds a pattern in a file compressed in block mode, reading the
+ * compressed blocks instead of a decompressed copy of the file. For each HUFFMAN_BLOCK,
+ * the pattern is encoded with the block's own CodeTable and its bits are looked for at
+ * every bit position of the payload (8 positions per 8 byte read). A block whose payload
+ * does not hold them (or whose CodeTable lacks a character of the pattern) can not contain
+ * the pattern and is never decoded; blocks with a candidate, and blocks of other types,
+ * are decoded to check each match. A match crossing the end of a block is only checked
+ * if the block's payload ends with the binary values of the start of the pattern
+ * and the next block starts with the rest of it (its first characters are decoded)
+ */
+public class CompressedSearch {
+    // static attributes
+    // number of possible characters
+    private static final int CHARACTER_COUNT = HuffmanCompress.CHARACTER_COUNT;
+    // largest number of pattern bits compared at once (longer patterns are filtered on their first bits)
+    private static final int FILTER_BITS = 57;
+
+    // instance attributes
+    // pattern to find
+    private final byte[] pattern;
+    // compressed bytes of the current block
+    private ByteBuffer blockBytes = ByteBuffer.allocate(0);
+    // number of block decodes of the last search (see HuffmanSeekableFile.getDecodeCount),
+    // a block decoded again to check a match crossing into the next block counts again
+    private long decodedBlocks;
+
+    /**
+     * Used to find every occurrence of the pattern in given file
+     *
+     * @param file file compressed in block mode
+     * @return offset of each occurrence in the uncompressed content, in ascending order
+     * @throws IOException if the file can not be read or a decoded block fails its checksum
+     */
+    public long[] search(HuffmanSeekableFile file) throws IOException {
+        BlockIndex index = file.getIndex();
+        long[] matches = new long[16];
+        int matchCount = 0;
+        long decodeCount = file.getDecodeCount();
+        // ends of the previous block that may start a crossing match (true at k -> last k bytes)
+        boolean[] previousEnds = null;
+
+        for (int block = 0; block < index.getBlockCount(); block++) {
+            long rawOffset = index.getRawOffset(block);
+            int rawLength = index.getRawLength(block);
+            blockBytes = file.readCompressedBlock(block, blockBytes);
+            // 1. getting the CodeTable and payload of a HUFFMAN_BLOCK (null for other types)
+            Payload payload = Payload.readFrom(blockBytes, pattern);
+
+            // 2. matches crossing into this block from the ones before it
+            if (previousEnds != null) {
+                byte[] head = payload != null ? payload.decodeHead(Math.min(pattern.length - 1, rawLength))
+                        : copyHead(file.decodeBlock(block), Math.min(pattern.length - 1, rawLength));
+                for (int k = pattern.length - 1; k >= 1; k--) { // earliest start first
+                    if (!previousEnds[k] || !startsWith(head, pattern.length - k, rawLength))
+                        continue;
+                    long start = rawOffset - k;
+                    if (start + pattern.length <= file.getLength()
+                            && Arrays.equals(file.read(start, pattern.length), pattern)) {
+                        if (matchCount == matches.length)
+                            matches = Arrays.copyOf(matches, matchCount * 2);
+                        matches[matchCount++] = start;
+                    }
+                }
+            }
+
+            // 3. matches inside this block, decoded only if its payload holds a candidate (a match starting
+            //    more than rawLength bytes before the next block is checked at the end of an earlier block)
+            boolean[] ends = new boolean[pattern.length];
+            if (payload == null || payload.mayContain()) {
+                ByteBuffer decoded = file.decodeBlock(block);
+                for (int i = 0; i <= rawLength - pattern.length; i++) {
+                    if (decoded.get(i) == pattern[0] && matchesAt(decoded, i)) {
+                        if (matchCount == matches.length)
+                            matches = Arrays.copyOf(matches, matchCount * 2);
+                        matches[matchCount++] = rawOffset + i;
+                    }
+                }
+                for (int k = 1; k < pattern.length; k++)
+                    ends[k] = k <= rawLength && endsWith(decoded, k);
+            } else {
+                for (int k = 1; k < pattern.length; k++)
+                    ends[k] = k <= rawLength && payload.mayEndWith(k);
+            }
+            previousEnds = ends;
+        }
+        decodedBlocks = file.getDecodeCount() - decodeCount;
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    /**
+     * @param decoded decoded bytes of a block
+     * @param index index of a byte of the block
+     * @return true if the pattern starts at given index
+     */
+    private boolean matchesAt(ByteBuffer decoded, int index) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (decoded.get(index + j) != pattern[j])
+                return false;
+        } return true;
+    }
+
+    /**
+     * @param decoded decoded bytes of a block
+     * @param count number of bytes at the end of the block
+     * @return true if the block ends with the first count bytes of the pattern
+     */
+    private boolean endsWith(ByteBuffer decoded, int count) {
+        for (int j = 0; j < count; j++) {
+            if (decoded.get(decoded.limit() - count + j) != pattern[j])
+                return false;
+        } return true;
+    }
+
+    /**
+     * @param head first bytes of a block (as many as the pattern needs, or the whole block)
+     * @param count number of bytes at the end of the pattern
+     * @param rawLength number of bytes of the block
+     * @return true if the block may start with the last count bytes of the pattern
+     *         (always true if the block is shorter than them, the match may cross it)
+     */
+    private boolean startsWith(byte[] head, int count, int rawLength) {
+        if (count > rawLength)
+            return true;
+        for (int j = 0; j < count; j++) {
+            if (head[j] != pattern[pattern.length - count + j])
+                return false;
+        } return true;
+    }
+
+    /**
+     * @param decoded decoded bytes of a block
+     * @param count number of bytes to copy
+     * @return copy of the first bytes of the block
+     */
+    private static byte[] copyHead(ByteBuffer decoded, int count) {
+        byte[] head = new byte[count];
+        decoded.get(0, head);
+        return head;
+    }
+
+    /**
+     * Payload object holds the CodeTable and the packed binary values of a HUFFMAN_BLOCK,
+     * and looks for the binary values of the pattern in them
+     */
+    private static class Payload {
+        // pattern to find
+        private final byte[] pattern;
+        // codeTable of the block
+        private final CodeTable codeTable;
+        // compressed bytes of the block (holding the payload)
+        private final ByteBuffer in;
+        // index of the first byte of the payload, index after its last byte
+        private final int start;
+        private final int end;
+        // number of meaningful bits of the payload
+        private final long bitLength;
+
+        /**
+         * Used to read the CodeTable and payload of a block
+         *
+         * @param blockBytes compressed bytes of the block (not moved)
+         * @param pattern pattern to find
+         * @return read Payload, null if the block is not a HUFFMAN_BLOCK
+         * @throws IOException if the block is not in the expected format
+         */
+        static Payload readFrom(ByteBuffer blockBytes, byte[] pattern) throws IOException {
+            ByteBuffer in = blockBytes.duplicate();
+            if (in.remaining() < 2 * Integer.BYTES + 1 + Integer.BYTES)
+                throw new IOException("invalid block in given file");
+            in.position(in.position() + 2 * Integer.BYTES); // raw length, rest length
+            if ((in.get() & 0xFF) != HuffmanBlock.HUFFMAN_BLOCK)
+                return null;
+            in.getInt(); // checksum (checked when the block is decoded)
+            CodeTable codeTable = CodeTable.readFrom(in, CHARACTER_COUNT);
+            if (!in.hasRemaining())
+                throw new IOException("invalid block in given file");
+            int paddingBits = in.get() & 0xFF;
+            if (paddingBits >= Byte.SIZE)
+                throw new IOException("invalid block in given file");
+            return new Payload(pattern, codeTable, blockBytes, in.position(), in.limit(),
+                    (long) in.remaining() * Byte.SIZE - paddingBits);
+        }
+
+        /**
+         * @return false if no bit position of the payload holds the binary values of the pattern
+         *         (the block can not contain the pattern)
+         */
+        boolean mayContain() {
+            // 1. binary values of the pattern (only its first FILTER_BITS bits are compared)
+            long filter = 0, patternBits = 0;
+            int filterBits = 0;
+            for (byte character : pattern) {
+                int length = codeTable.getLength(character & 0xFF);
+                if (length == 0) // character does not appear in the block
+                    return false;
+                int taken = Math.min(length, FILTER_BITS - filterBits);
+                if (taken > 0) {
+                    filter = filter << taken | codeTable.getCode(character & 0xFF) >>> (length - taken);
+                    filterBits += taken;
+                }
+                patternBits += length;
+            }
+
+            // 2. comparing them at every bit position, 8 positions per 8 byte read
+            //    (only for bytes followed by a possible next byte), the last bytes one position at a time
+            long last = bitLength - patternBits; // last position a match can start at
+            if (last < 0)
+                return false;
+            int shift = Long.SIZE - filterBits;
+            int lastByte = (int) (last / Byte.SIZE);
+            int fastEnd = Math.min(lastByte, end - start - Long.BYTES);
+            boolean[] nextBytes = nextBytes(filter, filterBits);
+            int index = 0;
+            for (int from = start; index < fastEnd; index++, from++) {
+                if (!nextBytes[in.get(from + 1) & 0xFF]) // no match can start in this byte
+                    continue;
+                long word = in.getLong(from);
+                if (word >>> shift == filter || word << 1 >>> shift == filter
+                        || word << 2 >>> shift == filter || word << 3 >>> shift == filter
+                        || word << 4 >>> shift == filter || word << 5 >>> shift == filter
+                        || word << 6 >>> shift == filter || word << 7 >>> shift == filter)
+                    return true;
+            }
+            for (; index <= lastByte; index++) {
+                long word = wordAt(index);
+                for (int k = 0; k < Byte.SIZE && (long) index * Byte.SIZE + k <= last; k++) {
+                    if (word << k >>> shift == filter)
+                        return true;
+                }
+            } return false;
+        }
+
+        /**
+         * Lists the values the byte after the one a match starts in can take
+         * (bits 8 - k to 15 - k of the filter for a match starting at bit k of its byte)
+         *
+         * @param filter first bits of the binary values of the pattern
+         * @param filterBits number of bits of filter
+         * @return true at each possible byte value
+         */
+        private static boolean[] nextBytes(long filter, int filterBits) {
+            boolean[] nextBytes = new boolean[1 << Byte.SIZE];
+            for (int k = 0; k < Byte.SIZE; k++) {
+                int from = Byte.SIZE - k; // first bit of filter in the next byte
+                int bits = Math.min(Byte.SIZE, filterBits - from);
+                if (bits <= 0) { // filter ends in the byte the match starts in
+                    Arrays.fill(nextBytes, true);
+                    break;
+                }
+                int value = (int) (filter >>> (filterBits - from - bits)) & ((1 << bits) - 1);
+                for (int rest = 0; rest < 1 << (Byte.SIZE - bits); rest++)
+                    nextBytes[value << (Byte.SIZE - bits) | rest] = true;
+            } return nextBytes;
+        }
+
+        /**
+         * @param count number of characters at the start of the pattern
+         * @return false if the payload does not end with their binary values
+         *         (the block can not end with them)
+         */
+        boolean mayEndWith(int count) {
+            long position = bitLength;
+            for (int j = count - 1; j >= 0; j--) {
+                int character = pattern[j] & 0xFF;
+                int length = codeTable.getLength(character);
+                if (length == 0 || position < length)
+                    return false;
+                position -= length;
+                if (bitsAt(position, length) != codeTable.getCode(character))
+                    return false;
+            } return true;
+        }
+
+        /**
+         * Decodes the first characters of the payload
+         *
+         * @param count number of characters to decode
+         * @return decoded characters
+         * @throws IOException if the payload holds an invalid binary value
+         */
+        byte[] decodeHead(int count) throws IOException {
+            HuffmanDecoder decoder = new HuffmanDecoder(codeTable);
+            BitReader reader = new BitReader(in.slice(start, end - start));
+            byte[] head = new byte[count];
+            try {
+                for (int i = 0; i < count; i++)
+                    head[i] = (byte) decoder.decodeSymbol(reader);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Compressed file is corrupted (invalid binary value)");
+            } return head;
+        }
+
+        /**
+         * @param position index of the first bit in the payload
+         * @param length number of bits (1 to FILTER_BITS)
+         * @return bits of the payload at given position, aligned to the right
+         */
+        private long bitsAt(long position, int length) {
+            return wordAt((int) (position / Byte.SIZE)) << (position % Byte.SIZE) >>> (Long.SIZE - length);
+        }
+
+        /**
+         * @param index index of a byte in the payload
+         * @return 8 bytes of the payload from given byte (bytes past the payload are read as 0s)
+         */
+        private long wordAt(int index) {
+            int from = start + index;
+            if (from <= end - Long.BYTES)
+                return in.getLong(from);
+            long word = 0;
+            for (int i = 0; i < Long.BYTES; i++)
+                word = word << Byte.SIZE | (from + i < end ? in.get(from + i) & 0xFF : 0);
+            return word;
+        }
+
+        /**
+         * Constructor for Payload object
+         * @param pattern pattern to find
+         * @param codeTable codeTable of the block
+         * @param in compressed bytes of the block
+         * @param start index of the first byte of the payload
+         * @param end index after the last byte of the payload
+         * @param bitLength number of meaningful bits of the payload
+         */
+        private Payload(byte[] pattern, CodeTable codeTable, ByteBuffer in, int start, int end, long bitLength) {
+            this.pattern = pattern;
+            this.codeTable = codeTable;
+            this.in = in;
+            this.start = start;
+            this.end = end;
+            this.bitLength = bitLength;
+        }
+    }
+
+    /**
+     * Constructor for CompressedSearch object
+     * @param pattern pattern to find (at least 1 byte)
+     */
+    public CompressedSearch(byte[] pattern) {
+        if (pattern.length == 0)
+            throw new IllegalArgumentException("Pattern should not be empty");
+        this.pattern = pattern.clone();
+    }
+
+    // getter method
+    public long getDecodedBlocks() { return decodedBlocks; }
+}
@@ -0,0 +1,316 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * ContextModel object holds the CodeTables of an order-1 context block.
+ * Each character is encoded with the CodeTable of its context (the previous byte,
+ * 0 for the first byte of a block). Contexts with similar frequencies share a cluster
+ * (and its CodeTable), so that the tables stored in the block stay small.
+ * Stored content:
+ * - number of clusters - 1 (byte)
+ * - cluster of each context (unsigned short count, then one byte per context)
+ * - CodeTable of each cluster (see CodeTable.writeTo)
+ */
+public class ContextModel {
+    // static attributes
+    // number of contexts (previous byte values)
+    private static final int CONTEXTS = HuffmanCompress.CHARACTER_COUNT;
+    // number of characters of every CodeTable
+    private static final int SYMBOLS = HuffmanCompress.CHARACTER_COUNT;
+    // natural logarithm of 2 (for entropy in bits)
+    private static final double LOG_2 = Math.log(2);
+    // precomputed n * ln(n) of small frequencies (merge estimates are computed a lot)
+    private static final double[] N_LOG_N = new double[4096];
+    static {
+        for (int n = 1; n < N_LOG_N.length; n++)
+            N_LOG_N[n] = n * Math.log(n);
+    }
+
+    // instance attributes
+    // cluster of each context
+    private final int[] clusterOf;
+    // CodeTable of each cluster
+    private final CodeTable[] codeTables;
+    // number of bits of the binary values of the block (0 if the model was read from a block)
+    private final long encodedLength;
+
+    /**
+     * Used to build the ContextModel of given content.
+     * Frequencies are counted per context, then the two clusters whose merge saves the most
+     * (estimated) bits are merged, as long as a merge saves any
+     *
+     * @param content content to model, from its position to its limit (not moved)
+     * @param maxCodeLength maximum length of a binary value
+     * @param frequencyList frequency of each character of content (order-0)
+     * @return built ContextModel, null if it is not estimated to beat a single CodeTable
+     */
+    public static ContextModel build(ByteBuffer content, int maxCodeLength, int[] frequencyList) {
+        // 1. counting the frequencies of each context
+        int[][] contextFrequencies = new int[CONTEXTS][SYMBOLS];
+        int previous = 0;
+        for (int i = content.position(); i < content.limit(); i++) {
+            int symbol = content.get(i) & 0xFF;
+            contextFrequencies[previous][symbol]++;
+            previous = symbol;
+        }
+
+        // 2. starting with one cluster per seen context
+        int[] clusterOf = new int[CONTEXTS];
+        int[][] clusterFrequencies = new int[CONTEXTS][];
+        double[] clusterCost = new double[CONTEXTS];
+        int clusterCount = 0;
+        for (int context = 0; context < CONTEXTS; context++) {
+            if (!isEmpty(contextFrequencies[context])) {
+                clusterOf[context] = clusterCount;
+                clusterCost[clusterCount] = estimateCost(contextFrequencies[context]);
+                clusterFrequencies[clusterCount++] = contextFrequencies[context];
+            }
+        }
+
+        // 3. merging clusters while it saves bits (gain[a][b] -> bits saved by merging a and b, a < b)
+        double[][] gain = new double[clusterCount][clusterCount];
+        for (int a = 0; a < clusterCount; a++) {
+            for (int b = a + 1; b < clusterCount; b++)
+                gain[a][b] = mergeGain(clusterFrequencies, clusterCost, a, b);
+        }
+        int[] mergedInto = new int[clusterCount]; // cluster each cluster was merged into
+        for (int cluster = 0; cluster < clusterCount; cluster++)
+            mergedInto[cluster] = cluster;
+        while (true) {
+            int bestA = -1, bestB = -1;
+            double bestGain = 0;
+            for (int a = 0; a < clusterCount; a++) {
+                if (mergedInto[a] != a)
+                    continue;
+                for (int b = a + 1; b < clusterCount; b++) {
+                    if (mergedInto[b] == b && gain[a][b] > bestGain) {
+                        bestGain = gain[a][b];
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (bestA < 0)
+                break;
+            // merging bestB into bestA, then updating the gains of bestA
+            int[] merged = new int[SYMBOLS];
+            for (int symbol = 0; symbol < SYMBOLS; symbol++)
+                merged[symbol] = clusterFrequencies[bestA][symbol] + clusterFrequencies[bestB][symbol];
+            clusterFrequencies[bestA] = merged;
+            clusterCost[bestA] = estimateCost(merged);
+            mergedInto[bestB] = bestA;
+            for (int other = 0; other < clusterCount; other++) {
+                if (other != bestA && mergedInto[other] == other) {
+                    double otherGain = mergeGain(clusterFrequencies, clusterCost, bestA, other);
+                    gain[Math.min(bestA, other)][Math.max(bestA, other)] = otherGain;
+                }
+            }
+        }
+
+        // 4. numbering the remaining clusters, comparing the estimated size with a single CodeTable
+        int[] number = new int[clusterCount];
+        int remaining = 0;
+        double totalCost = Short.BYTES * Byte.SIZE; // context map count
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            if (mergedInto[cluster] == cluster) {
+                number[cluster] = remaining++;
+                totalCost += clusterCost[cluster];
+            }
+        }
+        if (remaining < 2 || totalCost + CONTEXTS * Byte.SIZE >= estimateCost(frequencyList))
+            return null;
+        for (int context = 0; context < CONTEXTS; context++) {
+            int cluster = clusterOf[context];
+            while (mergedInto[cluster] != cluster)
+                cluster = mergedInto[cluster];
+            clusterOf[context] = isEmpty(contextFrequencies[context]) ? 0 : number[cluster];
+        }
+
+        // 5. building the CodeTable of each cluster (with the same tree builder as single tables)
+        CodeTable[] codeTables = new CodeTable[remaining];
+        long encodedLength = 0;
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            if (mergedInto[cluster] == cluster) {
+                int[] lengths = HuffmanCompress.setCodeLengths(clusterFrequencies[cluster], maxCodeLength);
+                CodeTable codeTable = CodeTable.fromLengths(lengths);
+                codeTables[number[cluster]] = codeTable;
+                encodedLength += codeTable.getEncodedLength(clusterFrequencies[cluster]);
+            }
+        } return new ContextModel(clusterOf, codeTables, encodedLength);
+    }
+
+    /**
+     * Estimates the number of bits needed for the binary values of given frequencies
+     * (their entropy) and for their stored CodeTable
+     *
+     * @param frequencyList frequency of each character
+     * @return estimated number of bits
+     */
+    private static double estimateCost(int[] frequencyList) {
+        return estimateCost(frequencyList, new int[SYMBOLS]);
+    }
+
+    /**
+     * Estimates the number of bits needed for the binary values of the added up frequencies
+     * of two clusters (their entropy) and for their stored CodeTable
+     *
+     * @param first frequency of each character in the first cluster
+     * @param second frequency of each character in the second cluster
+     * @return estimated number of bits
+     */
+    private static double estimateCost(int[] first, int[] second) {
+        int total = 0;
+        double bits = 0;
+        int count = 0; // number of code lengths stored (up to the last seen character)
+        for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+            int frequency = first[symbol] + second[symbol];
+            if (frequency > 0) {
+                total += frequency;
+                bits -= nLogN(frequency);
+                count = symbol + 1;
+            }
+        }
+        // a binary value has at least 1 bit, even where the entropy is lower
+        bits = Math.max(total, (bits + nLogN(total)) / LOG_2);
+        return bits + (Short.BYTES + count) * Byte.SIZE;
+    }
+
+    /**
+     * @param n frequency
+     * @return n * ln(n)
+     */
+    private static double nLogN(int n) {
+        return n < N_LOG_N.length ? N_LOG_N[n] : n * Math.log(n);
+    }
+
+    /**
+     * @param clusterFrequencies frequencies of each cluster
+     * @param clusterCost estimated cost of each cluster
+     * @param a first cluster
+     * @param b second cluster
+     * @return number of bits saved by merging the two clusters (negative if merging costs bits)
+     */
+    private static double mergeGain(int[][] clusterFrequencies, double[] clusterCost, int a, int b) {
+        return clusterCost[a] + clusterCost[b] - estimateCost(clusterFrequencies[a], clusterFrequencies[b]);
+    }
+
+    /**
+     * @param frequencyList frequency of each character
+     * @return true if no character has a frequency
+     */
+    private static boolean isEmpty(int[] frequencyList) {
+        for (int frequency : frequencyList) {
+            if (frequency > 0)
+                return false;
+        } return true;
+    }
+
+    /**
+     * Used to pack the binary values of given content, each with the CodeTable of its context
+     *
+     * @param content content to encode, from its position to its limit (not moved)
+     * @param writer BitWriter to pack the binary values into
+     */
+    public void encode(ByteBuffer content, BitWriter writer) {
+        int previous = 0;
+        for (int i = content.position(); i < content.limit(); i++) {
+            int symbol = content.get(i) & 0xFF;
+            CodeTable codeTable = codeTables[clusterOf[previous]];
+            writer.writeBits(codeTable.getCode(symbol), codeTable.getLength(symbol));
+            previous = symbol;
+        }
+    }
+
+    /**
+     * Used to decode a known number of characters into given buffer (heap or memory mapped)
+     *
+     * @param reader BitReader positioned at the first binary value
+     * @param output buffer to store the decoded characters in (its position is not used)
+     * @param offset index of the first decoded character in output
+     * @param length number of characters to decode
+     * @throws IOException if a binary value is not in the CodeTable of its context
+     */
+    public void decode(BitReader reader, ByteBuffer output, int offset, int length) throws IOException {
+        HuffmanDecoder[] decoders = new HuffmanDecoder[codeTables.length];
+        for (int cluster = 0; cluster < codeTables.length; cluster++)
+            decoders[cluster] = new HuffmanDecoder(codeTables[cluster]);
+
+        int previous = 0;
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                int symbol = decoders[clusterOf[previous]].decodeSymbol(reader);
+                output.put(i, (byte) symbol);
+                previous = symbol;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Compressed file is corrupted (invalid binary value)");
+        }
+    }
+
+    /**
+     * Used to store the clusters and their CodeTables
+     *
+     * @param out stream to write into
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    public int writeTo(DataOutputStream out) throws IOException {
+        int count = CONTEXTS;
+        while (count > 0 && clusterOf[count - 1] == 0)
+            count--; // trailing contexts of cluster 0 are not written
+        out.writeByte(codeTables.length - 1);
+        out.writeShort(count);
+        for (int context = 0; context < count; context++)
+            out.writeByte(clusterOf[context]);
+
+        int written = 1 + Short.BYTES + count;
+        for (CodeTable codeTable : codeTables)
+            written += codeTable.writeTo(out);
+        return written;
+    }
+
+    /**
+     * Used to read a ContextModel stored by writeTo
+     *
+     * @param in buffer to read from (moved past the stored model)
+     * @return read ContextModel
+     * @throws IOException if the stored model is not in the expected format
+     */
+    public static ContextModel readFrom(ByteBuffer in) throws IOException {
+        if (in.remaining() < 1 + Short.BYTES)
+            throw new IOException("invalid context model in given file");
+        int clusterCount = (in.get() & 0xFF) + 1;
+        int count = in.getShort() & 0xFFFF;
+        if (count > CONTEXTS || count > in.remaining())
+            throw new IOException("invalid context model in given file");
+
+        int[] clusterOf = new int[CONTEXTS];
+        for (int context = 0; context < count; context++) {
+            clusterOf[context] = in.get() & 0xFF;
+            if (clusterOf[context] >= clusterCount)
+                throw new IOException("invalid context model in given file");
+        }
+        CodeTable[] codeTables = new CodeTable[clusterCount];
+        for (int cluster = 0; cluster < clusterCount; cluster++)
+            codeTables[cluster] = CodeTable.readFrom(in, SYMBOLS);
+        return new ContextModel(clusterOf, codeTables, 0);
+    }
+
+    /**
+     * Constructor for ContextModel object
+     * @param clusterOf cluster of each context
+     * @param codeTables CodeTable of each cluster
+     * @param encodedLength number of bits of the binary values of the block
+     */
+    private ContextModel(int[] clusterOf, CodeTable[] codeTables, long encodedLength) {
+        this.clusterOf = clusterOf;
+        this.codeTables = codeTables;
+        this.encodedLength = encodedLength;
+    }
+
+    // getter methods
+    public int getClusterCount() { return codeTables.length; }
+    public long getEncodedLength() { return encodedLength; }
+}
@@ -0,0 +1,104 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * Used to count the frequency of every byte value (first pass of the compression).
+ * Bytes are read 8 at a time and counted into STRIPES interleaved sub-histograms,
+ * so that consecutive increments of the same byte value do not wait on each other.
+ * The sub-histograms are merged at the end. Large inputs can be split across a pool
+ */
+public class Histogram {
+    // static attributes
+    // number of interleaved sub-histograms
+    private static final int STRIPES = 4;
+    // number of possible byte values
+    private static final int VALUES = 256;
+    // smallest part of the input counted on its own thread
+    public static final int PARALLEL_THRESHOLD = 1024 * 1024;
+    // length of the sub-histograms work array (see count(ByteBuffer, int[], int[]))
+    public static final int WORK_LENGTH = STRIPES * VALUES;
+
+    /**
+     * Used to count the frequency of every byte value of given content
+     * @param content content to count, from its position to its limit (not moved)
+     * @return int[] containing byte value index and their frequency
+     */
+    public static int[] count(ByteBuffer content) {
+        int[] frequencyList = new int[VALUES];
+        count(content, frequencyList, new int[WORK_LENGTH]);
+        return frequencyList;
+    }
+
+    /**
+     * Used to count the frequency of every byte value of given content into given arrays,
+     * so that counting allocates nothing (see HuffmanCompressor)
+     *
+     * @param content content to count, from its position to its limit (not moved)
+     * @param frequencyList array of 256 to store the frequency of each byte value in (overwritten)
+     * @param stripes work array of WORK_LENGTH for the sub-histograms (overwritten)
+     */
+    public static void count(ByteBuffer content, int[] frequencyList, int[] stripes) {
+        Arrays.fill(stripes, 0);
+        int i = content.position();
+        int limit = content.limit();
+
+        // 8 bytes per read, byte k of each read goes into sub-histogram k % STRIPES
+        for (; i <= limit - Long.BYTES; i += Long.BYTES) {
+            long word = content.getLong(i);
+            stripes[(int) (word >>> 56)]++;
+            stripes[VALUES + (int) (word >>> 48 & 0xFF)]++;
+            stripes[2 * VALUES + (int) (word >>> 40 & 0xFF)]++;
+            stripes[3 * VALUES + (int) (word >>> 32 & 0xFF)]++;
+            stripes[(int) (word >>> 24 & 0xFF)]++;
+            stripes[VALUES + (int) (word >>> 16 & 0xFF)]++;
+            stripes[2 * VALUES + (int) (word >>> 8 & 0xFF)]++;
+            stripes[3 * VALUES + (int) (word & 0xFF)]++;
+        }
+        // remaining bytes (less than 8)
+        for (; i < limit; i++)
+            stripes[content.get(i) & 0xFF]++;
+
+        // merging the sub-histograms
+        Arrays.fill(frequencyList, 0);
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int value = 0; value < VALUES; value++)
+                frequencyList[value] += stripes[stripe * VALUES + value];
+        }
+    }
+
+    /**
+     * Used to count the frequency of every byte value of given content,
+     * splitting content into parts counted in parallel on given pool
+     * (content smaller than 2 * PARALLEL_THRESHOLD is counted on the calling thread)
+     *
+     * @param content content to count, from its position to its limit (not moved)
+     * @param pool pool to count the parts on
+     * @return int[] containing byte value index and their frequency
+     */
+    public static int[] count(ByteBuffer content, ForkJoinPool pool) {
+        int length = content.remaining();
+        int parts = Math.min(pool.getParallelism(), length / PARALLEL_THRESHOLD);
+        if (parts < 2)
+            return count(content);
+
+        // submitting each part
+        ArrayList<ForkJoinTask<int[]>> partTasks = new ArrayList<>();
+        int partLength = (length + parts - 1) / parts;
+        for (int offset = 0; offset < length; offset += partLength) {
+            ByteBuffer part = content.slice(content.position() + offset, Math.min(partLength, length - offset));
+            partTasks.add(pool.submit(() -> count(part)));
+        }
+
+        // adding up the frequencies of the parts
+        int[] frequencyList = new int[VALUES];
+        for (ForkJoinTask<int[]> partTask : partTasks) {
+            int[] partFrequencies = partTask.join();
+            for (int value = 0; value < VALUES; value++)
+                frequencyList[value] += partFrequencies[value];
+        } return frequencyList;
+    }
+}
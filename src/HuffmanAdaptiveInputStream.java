@@ -0,0 +1,155 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream decompressing content written by HuffmanAdaptiveOutputStream.
+ * Binary values are read bit by bit (canonical decoding), so no byte after a flush
+ * is read before it is needed: bytes that were flushed can be returned
+ * while the compressing side is still writing
+ */
+public class HuffmanAdaptiveInputStream extends InputStream {
+    // instance attributes
+    // stream the compressed bytes are read from
+    private final InputStream in;
+    // compressed bytes read from in (only the bytes in is ready to give are read at once)
+    private final byte[] inputBuffer = new byte[8 * 1024];
+    // index of the next byte of inputBuffer, number of bytes in inputBuffer
+    private int inputPosition, inputLength;
+    // model updated the same way as the one of the encoder
+    private final AdaptiveModel model;
+    // bits of the current byte that are not read yet (lowest bitCount bits)
+    private int bitBuffer;
+    // number of bits left in bitBuffer
+    private int bitCount;
+    // true once END_SYMBOL is read
+    private boolean ended;
+
+    /**
+     * Used to read a single byte
+     * @return read byte (0 to 255), -1 at the end of the stream
+     * @throws IOException if the stream can not be read or is not in the expected format
+     */
+    @Override
+    public int read() throws IOException {
+        int symbol = nextSymbol();
+        while (symbol == AdaptiveModel.FLUSH_SYMBOL)
+            symbol = nextSymbol();
+        return symbol == AdaptiveModel.END_SYMBOL ? -1 : symbol;
+    }
+
+    /**
+     * Used to read into part of a byte array. Reading stops early when the compressed bytes
+     * received so far are used up, rather than waiting for more
+     *
+     * @param bytes array to read into
+     * @param offset index of the first byte to fill
+     * @param length maximum number of bytes to read
+     * @return number of bytes read, -1 at the end of the stream
+     * @throws IOException if the stream can not be read or is not in the expected format
+     */
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            if (read > 0 && bitCount == 0 && inputPosition == inputLength && in.available() == 0)
+                break; // returning the decoded bytes rather than waiting for more
+            int symbol = nextSymbol();
+            if (symbol == AdaptiveModel.END_SYMBOL)
+                break;
+            if (symbol != AdaptiveModel.FLUSH_SYMBOL)
+                bytes[offset + read++] = (byte) symbol;
+        } return read == 0 && length > 0 ? -1 : read;
+    }
+
+    /**
+     * Decodes the next character and counts it in the model
+     * @return decoded character (END_SYMBOL once the end of the stream is reached)
+     * @throws IOException if the stream can not be read or is not in the expected format
+     */
+    private int nextSymbol() throws IOException {
+        if (ended)
+            return AdaptiveModel.END_SYMBOL;
+        int symbol = readSymbol();
+        model.update(symbol);
+        if (symbol == AdaptiveModel.END_SYMBOL)
+            ended = true;
+        else if (symbol == AdaptiveModel.FLUSH_SYMBOL)
+            bitCount = 0; // rest of the byte is padding
+        return symbol;
+    }
+
+    /**
+     * Used to check if given file was compressed in adaptive mode
+     * @param file file to check
+     * @return true if the file starts with ADAPTIVE_MAGIC, false otherwise
+     */
+    public static boolean isAdaptiveFile(TextFile file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file.getFilePath()))) {
+            return in.readInt() == HuffmanAdaptiveOutputStream.ADAPTIVE_MAGIC;
+        } catch (IOException e) { // file shorter than ADAPTIVE_MAGIC (or can not be read)
+            return false;
+        }
+    }
+
+    /**
+     * Used to close the underlying stream
+     * @throws IOException if the stream can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads the binary value of the next character, one bit at a time
+     * @return decoded character
+     * @throws IOException if the stream can not be read or is not in the expected format
+     */
+    private int readSymbol() throws IOException {
+        int code = 0;
+        for (int length = 1; length <= model.getMaxLength(); length++) {
+            code = code << 1 | readBit();
+            int symbol = model.getSymbol(length, code);
+            if (symbol >= 0)
+                return symbol;
+        } throw new IOException("invalid binary value in given stream");
+    }
+
+    /**
+     * Reads the next bit of the stream
+     * @return read bit (0 or 1)
+     * @throws IOException if the stream can not be read or ends before END_SYMBOL
+     */
+    private int readBit() throws IOException {
+        if (bitCount == 0) {
+            if (inputPosition == inputLength) { // blocks only if no compressed byte is ready
+                inputLength = in.read(inputBuffer);
+                inputPosition = 0;
+                if (inputLength <= 0)
+                    throw new EOFException("Compressed stream is truncated");
+            }
+            bitBuffer = inputBuffer[inputPosition++] & 0xFF;
+            bitCount = Byte.SIZE;
+        } return bitBuffer >>> --bitCount & 1;
+    }
+
+    /**
+     * Constructor for HuffmanAdaptiveInputStream object
+     * @param in stream to read the compressed content from
+     * @throws IOException if the stream can not be read or is not an adaptive compressed stream
+     */
+    public HuffmanAdaptiveInputStream(InputStream in) throws IOException {
+        this.in = in;
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != HuffmanAdaptiveOutputStream.ADAPTIVE_MAGIC)
+            throw new IOException("Given stream is not adaptive Huffman compressed");
+        int rebuildInterval = header.readInt();
+        if (rebuildInterval <= 0)
+            throw new IOException("invalid rebuild interval in given stream");
+        this.model = new AdaptiveModel(rebuildInterval);
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Output stream compressing everything written into it in a single pass (adaptive mode).
+ * Each byte is encoded straight away with the current CodeTable of an AdaptiveModel,
+ * so nothing has to be read ahead and flush() sends every byte written so far.
+ * Stream content:
+ * - header: ADAPTIVE_MAGIC (int), rebuild interval (int)
+ * - binary values of the written bytes, FLUSH_SYMBOL (then padding up to a whole byte)
+ *   at every flush and END_SYMBOL (then padding) at the end of the stream
+ */
+public class HuffmanAdaptiveOutputStream extends OutputStream {
+    // static attributes
+    // first 4 bytes of every adaptive compressed stream ("HUFA")
+    public static final int ADAPTIVE_MAGIC = 0x48554641;
+    // number of packed bytes collected before they are written into the underlying stream
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // instance attributes
+    // stream the compressed bytes are written into
+    private final OutputStream out;
+    // BitWriter collecting the binary values
+    private final BitWriter writer = new BitWriter(BUFFER_SIZE);
+    // model shared (in behaviour) with the decoder
+    private final AdaptiveModel model;
+    // true once the end of the stream is written
+    private boolean finished;
+
+    /**
+     * Used to write a single byte
+     * @param b byte to write (lowest 8 bits)
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        writeSymbol(b & 0xFF);
+        if (writer.getBytePosition() >= BUFFER_SIZE)
+            writer.drainTo(out);
+    }
+
+    /**
+     * Used to write part of a byte array
+     *
+     * @param bytes bytes to write
+     * @param offset index of the first byte to write
+     * @param length number of bytes to write
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        for (int i = offset; i < offset + length; i++) {
+            writeSymbol(bytes[i] & 0xFF);
+            if (writer.getBytePosition() >= BUFFER_SIZE)
+                writer.drainTo(out);
+        }
+    }
+
+    /**
+     * Used to send every byte written so far (ending with FLUSH_SYMBOL and padding),
+     * so that the decoder can return them without waiting for more bytes
+     *
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeSymbol(AdaptiveModel.FLUSH_SYMBOL);
+        writer.finish();
+        writer.drainTo(out);
+        out.flush();
+    }
+
+    /**
+     * Used to write the end of the stream, without closing the underlying stream
+     * @throws IOException if the stream can not be written
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        writeSymbol(AdaptiveModel.END_SYMBOL);
+        writer.finish();
+        writer.drainTo(out);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Used to finish and close the stream
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Encodes a single character and counts it in the model
+     * @param symbol character to encode
+     */
+    private void writeSymbol(int symbol) {
+        CodeTable codeTable = model.getCodeTable();
+        writer.writeBits(codeTable.getCode(symbol), codeTable.getLength(symbol));
+        model.update(symbol);
+    }
+
+    /**
+     * Ensures nothing is written after the end of the stream
+     * @throws IOException if the stream is already finished
+     */
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("Stream is already finished");
+    }
+
+    /**
+     * Constructor for HuffmanAdaptiveOutputStream object (with default rebuild interval)
+     * @param out stream to write the compressed content into
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanAdaptiveOutputStream(OutputStream out) throws IOException {
+        this(out, AdaptiveModel.DEFAULT_REBUILD_INTERVAL);
+    }
+
+    /**
+     * Constructor for HuffmanAdaptiveOutputStream object
+     * @param out stream to write the compressed content into
+     * @param rebuildInterval number of characters between two rebuilds of the CodeTable
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanAdaptiveOutputStream(OutputStream out, int rebuildInterval) throws IOException {
+        this.out = out;
+        this.model = new AdaptiveModel(rebuildInterval);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(ADAPTIVE_MAGIC);
+        header.writeInt(rebuildInterval);
+    }
+}
@@ -0,0 +1,402 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+
+/**
+ * Used to measure the speed of the compression steps on sample and generated content.
+ * Every step is reported as time per operation, throughput (MB of content per second)
+ * and bytes allocated per operation (on every thread, so parallel steps are included)
+ *
+ * Usage: java HuffmanBenchmark [corpus size in KB] [corpus entropy in bits per character]
+ */
+public class HuffmanBenchmark {
+    // static attributes
+    // rounds run before measuring (letting the JIT compile the hot paths)
+    private static final int WARMUP_ROUNDS = 5;
+    // rounds that are measured
+    private static final int MEASURED_ROUNDS = 10;
+    // length of the generated text content
+    private static final int TEXT_LENGTH = 4 * 1024 * 1024;
+    // default entropy of the generated corpus (bits per character, close to english text)
+    private static final double DEFAULT_ENTROPY = 4.5;
+    // number of bits of an ASCII character (maximum entropy of the generated corpus)
+    private static final int ASCII_BITS = 7;
+    // sample corpus shipped with the project
+    private static final String SAMPLE_PATH = "../datasets/sample.txt";
+    // result of the last measured operation (kept so that the JIT can not drop the work)
+    private static volatile Object sink;
+
+    /**
+     * Used to generate text content with uniformly distributed characters
+     *
+     * @param length number of characters to generate
+     * @param alphabetSize number of distinct characters (1 to 256)
+     * @param seed seed of the random generator
+     * @return generated text content
+     */
+    public static String genText(int length, int alphabetSize, long seed) {
+        Random random = new Random(seed);
+        char[] content = new char[length];
+        for (int i = 0; i < length; i++)
+            content[i] = (char) random.nextInt(alphabetSize);
+        return new String(content);
+    }
+
+    /**
+     * Used to generate ASCII content with a given entropy.
+     * Characters follow a geometric distribution (p(i) ~ ratio^i), whose ratio is
+     * searched so that the entropy of the distribution matches the requested one
+     *
+     * @param length number of characters (bytes) to generate
+     * @param entropy entropy in bits per character (0 to 7)
+     * @param seed seed of the random generator
+     * @return generated content
+     */
+    public static byte[] genCorpus(int length, double entropy, long seed) {
+        if (entropy < 0 || entropy > ASCII_BITS)
+            throw new IllegalArgumentException("Entropy should be 0 to " + ASCII_BITS + " bits per character");
+
+        // searching the ratio (entropy grows with the ratio, from 0 up to 7 at ratio 1)
+        double low = 0, high = 1;
+        for (int i = 0; i < 60; i++) {
+            double ratio = (low + high) / 2;
+            if (entropyOf(probabilities(ratio)) < entropy) low = ratio;
+            else high = ratio;
+        }
+        double[] probabilities = probabilities(low);
+        double[] cumulative = new double[probabilities.length];
+        double sum = 0;
+        for (int i = 0; i < probabilities.length; i++)
+            cumulative[i] = sum += probabilities[i];
+
+        // drawing each byte value (binary search over the cumulative probabilities)
+        Random random = new Random(seed);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            double draw = random.nextDouble() * sum;
+            int min = 0, max = cumulative.length - 1;
+            while (min < max) {
+                int mid = (min + max) >>> 1;
+                if (cumulative[mid] <= draw) min = mid + 1;
+                else max = mid;
+            } content[i] = (byte) min;
+        } return content;
+    }
+
+    /**
+     * @param ratio ratio between the probabilities of consecutive characters
+     * @return probability of each ASCII character
+     */
+    private static double[] probabilities(double ratio) {
+        double[] probabilities = new double[1 << ASCII_BITS];
+        double weight = 1, sum = 0;
+        for (int i = 0; i < probabilities.length; i++, weight *= ratio)
+            sum += probabilities[i] = weight;
+        for (int i = 0; i < probabilities.length; i++)
+            probabilities[i] /= sum;
+        return probabilities;
+    }
+
+    /**
+     * @param probabilities probability of each character
+     * @return entropy of the distribution in bits
+     */
+    private static double entropyOf(double[] probabilities) {
+        double entropy = 0;
+        for (double probability : probabilities) {
+            if (probability > 0)
+                entropy -= probability * Math.log(probability) / Math.log(2);
+        } return entropy;
+    }
+
+    /**
+     * Runs every compression step (and end-to-end compression) over given content
+     *
+     * @param name name of the corpus
+     * @param content content of the corpus (UTF-8 text)
+     * @throws IOException if the temporary files can not be read or written
+     */
+    public static void benchmarkSteps(String name, byte[] content) throws IOException {
+        System.out.printf("%s (%d bytes)%n", name, content.length);
+        System.out.printf("  %-24s %10s %10s %14s%n", "step", "ms/op", "MB/s", "B/op");
+        // String form of content for the String based steps (which encode its UTF-8 bytes)
+        String textContent = new String(content, StandardCharsets.UTF_8);
+        long length = content.length;
+
+        // inputs of each step (built once, from the output of the previous step)
+        int[] frequencyList = HuffmanCompress.setFrequency(content, 0, content.length);
+        int[] codeLengths = HuffmanCompress.setCodeLengths(frequencyList, HuffmanCompress.MAX_CODE_LENGTH);
+        CodeTable codeTable = CodeTable.fromLengths(codeLengths);
+        String encodedString = HuffmanCompress.genEncodedString(textContent, codeTable);
+        byte[] encodedBytes = HuffmanCompress.encodeToBinary(content, codeTable);
+        long bitLength = encodedString.length();
+        ArrayList<Node> binaryValueList = codeTable.toNodeList();
+        ArrayList<ArrayList<Node>> sortedValueList = HuffmanDecompress.sortBinaryValueList(binaryValueList);
+        int maxFrequency = HuffmanDecompress.getMaxFrequency(binaryValueList);
+
+        // single steps
+        measure("setFrequency", length, () -> HuffmanCompress.setFrequency(content, 0, content.length));
+        measure("buildTree", length, () -> HuffmanCompress.buildTree(frequencyList));
+        measure("Tree.buildCodeLengths", length, () -> Tree.buildCodeLengths(frequencyList));
+        measure("setCodeLengths", length, () ->
+                HuffmanCompress.setCodeLengths(frequencyList, HuffmanCompress.MAX_CODE_LENGTH));
+        measure("CodeTable.fromLengths", length, () -> CodeTable.fromLengths(codeLengths));
+        measure("genEncodedString", length, () -> HuffmanCompress.genEncodedString(textContent, codeTable));
+        measure("convertToBinary", length, () -> HuffmanCompress.convertToBinary(encodedString));
+        measure("encodeToBinary", length, () -> HuffmanCompress.encodeToBinary(content, codeTable));
+        measure("convertToString", length, () -> HuffmanDecompress.convertToString(encodedBytes));
+        measure("decompressBinaryToText", length, () ->
+                HuffmanDecompress.decompressBinaryToText(encodedString, sortedValueList, maxFrequency));
+        measure("HuffmanDecoder.decode", length, () ->
+                new HuffmanDecoder(codeTable).decode(encodedBytes, bitLength));
+
+        // end-to-end, in memory
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        HuffmanCompress.compressBlocks(content, HuffmanBlock.BLOCK_SIZE, HuffmanCompress.MAX_CODE_LENGTH,
+                false, null, compressed, ForkJoinPool.commonPool());
+        byte[] compressedBytes = compressed.toByteArray();
+        measure("compress (memory)", length, () -> {
+            try {
+                HuffmanCompress.compressBlocks(content, HuffmanBlock.BLOCK_SIZE, HuffmanCompress.MAX_CODE_LENGTH,
+                        false, null, OutputStream.nullOutputStream(), ForkJoinPool.commonPool());
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+            return null;
+        });
+        measure("decompress (memory)", length, () -> {
+            try {
+                return new HuffmanDecompressInputStream(new ByteArrayInputStream(compressedBytes))
+                        .transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+        });
+
+        // end-to-end, in memory with the optional stages
+        System.out.printf("  compressed size: %d bytes%n", compressedBytes.length);
+        benchmarkMode("context", content, true, null);
+        benchmarkMode("lz " + MatchFinder.FAST_LEVEL, content, false, new MatchFinder(MatchFinder.FAST_LEVEL));
+        benchmarkMode("lz " + MatchFinder.MAX_LEVEL, content, false, new MatchFinder(MatchFinder.MAX_LEVEL));
+
+        // single blocks with a reused HuffmanCompressor and HuffmanDecompressor (one and STREAM_COUNT bitstreams)
+        benchmarkBlocks("plain", content, new HuffmanCompressor());
+        benchmarkBlocks("interleaved", content, new HuffmanCompressor(HuffmanCompress.MAX_CODE_LENGTH, true));
+
+        // end-to-end, through (memory mapped) files
+        File rawFile = File.createTempFile("benchmark", ".txt");
+        File compressedFile = File.createTempFile("benchmark_compressed", ".txt");
+        File decodedFile = File.createTempFile("benchmark_decoded", ".txt");
+        try {
+            Files.write(rawFile.toPath(), content);
+            Files.write(compressedFile.toPath(), compressedBytes);
+            TextFile rawText = new TextFile(rawFile.getPath());
+            TextFile compressedText = new TextFile(compressedFile.getPath());
+            TextFile decodedText = new TextFile(decodedFile.getPath());
+            measure("compress (file)", length, () -> {
+                try {
+                    HuffmanCompress.compressBlocks(rawText, HuffmanBlock.BLOCK_SIZE, HuffmanCompress.MAX_CODE_LENGTH,
+                            false, null, OutputStream.nullOutputStream(), ForkJoinPool.commonPool());
+                } catch (IOException e) { throw new UncheckedIOException(e); }
+                return null;
+            });
+            measure("decompress (file)", length, () -> {
+                HuffmanDecompress.decompressBlockFile(compressedText, decodedText);
+                return null;
+            });
+        } finally {
+            rawFile.delete();
+            compressedFile.delete();
+            decodedFile.delete();
+        }
+    }
+
+    /**
+     * Runs end-to-end compression (in memory) with the given optional stages
+     *
+     * @param name name of the stages
+     * @param content content of the corpus
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     * @throws IOException never (streams are in memory)
+     */
+    private static void benchmarkMode(String name, byte[] content, boolean contextMode,
+                                      MatchFinder matchFinder) throws IOException {
+        long length = content.length;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        HuffmanCompress.compressBlocks(content, HuffmanBlock.BLOCK_SIZE, HuffmanCompress.MAX_CODE_LENGTH,
+                contextMode, matchFinder, compressed, ForkJoinPool.commonPool());
+        byte[] compressedBytes = compressed.toByteArray();
+        System.out.printf("  compressed size (%s): %d bytes%n", name, compressedBytes.length);
+        measure("compress (" + name + ")", length, () -> {
+            try {
+                HuffmanCompress.compressBlocks(content, HuffmanBlock.BLOCK_SIZE, HuffmanCompress.MAX_CODE_LENGTH,
+                        contextMode, matchFinder, OutputStream.nullOutputStream(), ForkJoinPool.commonPool());
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+            return null;
+        });
+        measure("decompress (" + name + ")", length, () -> {
+            try {
+                return new HuffmanDecompressInputStream(new ByteArrayInputStream(compressedBytes))
+                        .transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+        });
+    }
+
+    /**
+     * Runs compression and decompression of content cut into BLOCK_SIZE blocks,
+     * each block written by given HuffmanCompressor and read back by one HuffmanDecompressor
+     *
+     * @param name name of the block mode
+     * @param content content of the corpus
+     * @param compressor HuffmanCompressor writing the blocks
+     */
+    private static void benchmarkBlocks(String name, byte[] content, HuffmanCompressor compressor) {
+        long length = content.length;
+        int blockCount = (content.length + HuffmanBlock.BLOCK_SIZE - 1) / HuffmanBlock.BLOCK_SIZE;
+        ByteBuffer compressed = ByteBuffer.allocate(blockCount * HuffmanCompressor.maxCompressedLength(HuffmanBlock.BLOCK_SIZE));
+        ByteBuffer decoded = ByteBuffer.allocate(content.length);
+        HuffmanDecompressor decompressor = new HuffmanDecompressor();
+        Supplier<Object> compress = () -> {
+            compressed.clear();
+            for (int offset = 0; offset < content.length; offset += HuffmanBlock.BLOCK_SIZE) {
+                int blockLength = Math.min(HuffmanBlock.BLOCK_SIZE, content.length - offset);
+                compressor.compress(ByteBuffer.wrap(content, offset, blockLength), compressed);
+            } return compressed.flip();
+        };
+        compress.get();
+        System.out.printf("  compressed size (%s blocks): %d bytes%n", name, compressed.limit());
+        measure("compress (" + name + ")", length, compress);
+        measure("decompress (" + name + ")", length, () -> {
+            try {
+                compressed.rewind();
+                decoded.clear();
+                while (compressed.hasRemaining())
+                    decompressor.decompress(compressed, decoded);
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+            return decoded;
+        });
+    }
+
+    /**
+     * Measures a single step, printing its time per operation,
+     * throughput and allocated bytes per operation
+     *
+     * @param name name of the step
+     * @param length number of content bytes processed by one operation
+     * @param operation step to measure (its result is kept in sink)
+     */
+    private static void measure(String name, long length, Supplier<Object> operation) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            sink = operation.get();
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++)
+            sink = operation.get();
+        long elapsed = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+
+        double seconds = elapsed / 1e9 / MEASURED_ROUNDS;
+        System.out.printf("  %-24s %10.3f %10.1f %14d%n", name, seconds * 1e3,
+                length / seconds / (1024 * 1024), allocated / MEASURED_ROUNDS);
+    }
+
+    /**
+     * @return number of bytes allocated so far by every live thread (-1 if not supported)
+     */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) // -1 for threads that ended in the meantime
+                total += allocated;
+        } return total;
+    }
+
+    /**
+     * Measures the encoding cost per character for growing numbers of distinct characters.
+     * With the codeTable lookup the cost should stay the same for every alphabet size
+     */
+    public static void benchmarkEncode() {
+        System.out.println("encodeToBinary (ns per character)");
+        for (int alphabetSize : new int[] {2, 16, 64, 256}) {
+            String textContent = genText(TEXT_LENGTH, alphabetSize, alphabetSize);
+            CodeTable codeTable = HuffmanCompress.setBinaryValueList
+                    (HuffmanCompress.buildTree(HuffmanCompress.setFrequency(textContent)));
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++)
+                HuffmanCompress.encodeToBinary(textContent, codeTable);
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++)
+                HuffmanCompress.encodeToBinary(textContent, codeTable);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("  %3d distinct characters: %.2f%n", alphabetSize,
+                    elapsed / (double) MEASURED_ROUNDS / TEXT_LENGTH);
+        }
+    }
+
+    /**
+     * Measures the time of building binary value lengths for growing alphabet sizes.
+     * Tree.buildCodeLengths grows with n log n, the TreeNode based buildTree
+     * (256 characters only) is shown for comparison
+     */
+    public static void benchmarkTreeBuild() {
+        System.out.println("Tree.buildCodeLengths (ms per build)");
+        for (int alphabetSize : new int[] {256, 64 * 1024, 1024 * 1024}) {
+            Random random = new Random(alphabetSize);
+            int[] frequencyList = new int[alphabetSize];
+            for (int i = 0; i < alphabetSize; i++) // roughly Zipf distributed frequencies
+                frequencyList[i] = 1 + (int) (1_000_000.0 / (1 + random.nextInt(alphabetSize)));
+
+            int rounds = alphabetSize > 64 * 1024 ? 2 : MEASURED_ROUNDS;
+            for (int i = 0; i < WARMUP_ROUNDS; i++)
+                Tree.buildCodeLengths(frequencyList);
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++)
+                Tree.buildCodeLengths(frequencyList);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("  %7d characters: %.3f%n", alphabetSize, elapsed / (double) rounds / 1e6);
+        }
+
+        int[] frequencyList = HuffmanCompress.setFrequency(genText(TEXT_LENGTH / 16, 256, 1));
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            HuffmanCompress.buildTree(frequencyList);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++)
+            HuffmanCompress.buildTree(frequencyList);
+        System.out.printf("buildTree (ms per build)%n      256 characters: %.3f%n",
+                (System.nanoTime() - start) / (double) MEASURED_ROUNDS / 1e6);
+    }
+
+    /**
+     * Used to run the benchmarks
+     * @param args command line user input (corpus size in KB, corpus entropy in bits per character)
+     * @throws IOException if the corpora can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        int corpusLength = args.length > 0 ? Integer.parseInt(args[0]) * 1024 : TEXT_LENGTH;
+        double entropy = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_ENTROPY;
+
+        File sample = new File(SAMPLE_PATH);
+        if (sample.exists())
+            benchmarkSteps(sample.getPath(), Files.readAllBytes(sample.toPath()));
+        benchmarkSteps(String.format("generated corpus, %.2f bits per character", entropy),
+                genCorpus(corpusLength, entropy, corpusLength));
+        benchmarkEncode();
+        benchmarkTreeBuild();
+    }
+}
@@ -0,0 +1,422 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+
+/**
+ * Used to write and read the blocks of a Huffman compressed file (or stream).
+ * A compressed file is self-describing, no other file is needed to decompress it:
+ * - header: MAGIC (int), VERSION (byte), original length (long, -1 if unknown)
+ * - block: raw length (int), length of the rest of the block (int), block type (byte),
+ *   CRC32 checksum of the raw bytes (int), then depending on the block type:
+ *   - HUFFMAN_BLOCK: CodeTable (code lengths), padding bits (byte), payload
+ *   - CONTEXT_BLOCK: ContextModel (one CodeTable per cluster of contexts), padding bits (byte), payload
+ *   - LZ_BLOCK: LzModel (literal/length and distance CodeTables), padding bits (byte), payload
+ *   - INTERLEAVED_BLOCK: CodeTable, padding bits of each stream (STREAM_COUNT bytes),
+ *     length of each stream but the last (int each), the STREAM_COUNT streams
+ *   - STORED_BLOCK: the raw bytes as they are (blocks that coding would not make smaller)
+ *   - REPEAT_BLOCK: padding bits (byte), payload coded with the CodeTable of the previous block
+ *   - DELTA_BLOCK: number of changed code lengths (short), each change: character (byte) and
+ *     its new code length (byte, 0 for unused), padding bits (byte), payload coded with
+ *     the CodeTable of the previous block after the changes
+ * The previous block is the last HUFFMAN_BLOCK, INTERLEAVED_BLOCK, REPEAT_BLOCK or DELTA_BLOCK
+ * before the block, so REPEAT_BLOCKs and DELTA_BLOCKs are only decoded in order (see HuffmanCompressor)
+ * - end of the file: raw length of 0, followed by the BlockIndex
+ */
+public class HuffmanBlock {
+    // static attributes
+    // first 4 bytes of every compressed file ("HUF1")
+    public static final int MAGIC = 0x48554631;
+    // version of the compressed file format
+    public static final int VERSION = 2;
+    // block types: one CodeTable for the whole block, one CodeTable per previous byte context,
+    // LZ77 tokens coded with a literal/length and a distance CodeTable,
+    // one CodeTable with the characters spread over STREAM_COUNT bitstreams (see HuffmanCompressor),
+    // raw bytes stored without coding, the CodeTable of the previous block as it is or with changed lengths
+    public static final int HUFFMAN_BLOCK = 0;
+    public static final int CONTEXT_BLOCK = 1;
+    public static final int LZ_BLOCK = 2;
+    public static final int INTERLEAVED_BLOCK = 3;
+    public static final int STORED_BLOCK = 4;
+    public static final int REPEAT_BLOCK = 5;
+    public static final int DELTA_BLOCK = 6;
+    // smallest part of a block that coding has to save, blocks saving less are stored
+    // (already compressed, encrypted or base64 content, whose byte values are close to uniform)
+    public static final double MIN_SAVING = 1.0 / 32;
+    // number of bitstreams of an INTERLEAVED_BLOCK (character i is in stream i % STREAM_COUNT)
+    public static final int STREAM_COUNT = 4;
+    // default number of bytes compressed into one block
+    public static final int BLOCK_SIZE = 256 * 1024;
+    // number of bytes written by writeHeader
+    public static final int HEADER_LENGTH = Integer.BYTES + 1 + Long.BYTES;
+    // number of bytes before the rest of a block (raw length and length of the rest)
+    private static final int BLOCK_PREFIX_LENGTH = 2 * Integer.BYTES;
+
+    /**
+     * Used to write the start of a compressed file
+     * @param out stream to write into
+     * @param originalLength number of bytes to be compressed (-1 if not known yet)
+     * @throws IOException if the stream can not be written
+     */
+    public static void writeHeader(DataOutputStream out, long originalLength) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(originalLength);
+    }
+
+    /**
+     * Used to check if given file is a compressed file (rather than a _list.txt pair)
+     * @param file file to check
+     * @return true if the file starts with MAGIC, false otherwise
+     */
+    public static boolean isBlockFile(TextFile file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file.getFilePath()))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) { // file shorter than MAGIC (or can not be read)
+            return false;
+        }
+    }
+
+    /**
+     * Used to read (and check) the start of a compressed file
+     * @param in stream to read from
+     * @return original length stored in the header (-1 if not known)
+     * @throws IOException if the stream can not be read or is not a compressed file
+     */
+    public static long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Given stream is not Huffman compressed");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported compressed file version " + version);
+        return in.readLong();
+    }
+
+    /**
+     * Used to compress given content into one block.
+     * Block gets its own frequency list, Tree and codeTable
+     *
+     * @param out stream to write the block into
+     * @param content content to compress, from its position to its limit (heap or memory mapped,
+     *                more than 0 bytes, the buffer itself is not modified)
+     * @param maxCodeLength maximum length of a binary value
+     * @param writer BitWriter used to pack the payload (reused between blocks)
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    public static int writeBlock(DataOutputStream out, ByteBuffer content,
+                                 int maxCodeLength, BitWriter writer) throws IOException {
+        return writeBlock(out, content, maxCodeLength, false, null, writer);
+    }
+
+    /**
+     * Used to compress given content into one block.
+     * In context mode, the block may get a CodeTable per cluster of previous byte contexts
+     * (see ContextModel). With a MatchFinder, the block may be coded as LZ77 tokens
+     * (see LzModel). The smallest of the tried block types is written, or a STORED_BLOCK
+     * if it saves less than MIN_SAVING of the content. Without context mode and LZ77 stage,
+     * content whose entropy already rules that saving out is stored without building a CodeTable
+     *
+     * @param out stream to write the block into
+     * @param content content to compress, from its position to its limit (heap or memory mapped,
+     *                more than 0 bytes, the buffer itself is not modified)
+     * @param maxCodeLength maximum length of a binary value
+     * @param contextMode true to try order-1 context modelling
+     * @param matchFinder MatchFinder to try LZ77 tokens with (null to not try them)
+     * @param writer BitWriter used to pack the payload (reused between blocks)
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    public static int writeBlock(DataOutputStream out, ByteBuffer content, int maxCodeLength,
+                                 boolean contextMode, MatchFinder matchFinder, BitWriter writer)
+            throws IOException {
+        int length = content.remaining();
+        // 1. building the (canonical) codeTable of the block, then the models tried instead
+        // (their tables are written into buffers first to know their length)
+        int[] frequencyList = HuffmanCompress.setFrequency(content);
+        if (!contextMode && matchFinder == null && isIncompressible(frequencyList, length))
+            return writeStoredBlock(out, content);
+        CodeTable codeTable = CodeTable.fromLengths(HuffmanCompress.setCodeLengths(frequencyList, maxCodeLength));
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        codeTable.writeTo(new DataOutputStream(tableBytes));
+        long encodedLength = codeTable.getEncodedLength(frequencyList);
+        int blockType = HUFFMAN_BLOCK;
+
+        ContextModel contextModel = contextMode ? ContextModel.build(content, maxCodeLength, frequencyList) : null;
+        if (contextModel != null) {
+            ByteArrayOutputStream modelBytes = new ByteArrayOutputStream();
+            contextModel.writeTo(new DataOutputStream(modelBytes));
+            if (isSmaller(modelBytes, contextModel.getEncodedLength(), tableBytes, encodedLength)) {
+                tableBytes = modelBytes;
+                encodedLength = contextModel.getEncodedLength();
+                blockType = CONTEXT_BLOCK;
+            }
+        }
+        LzModel lzModel = matchFinder != null ? LzModel.build(content, maxCodeLength, matchFinder) : null;
+        if (lzModel != null) {
+            ByteArrayOutputStream modelBytes = new ByteArrayOutputStream();
+            lzModel.writeTo(new DataOutputStream(modelBytes));
+            if (isSmaller(modelBytes, lzModel.getEncodedLength(), tableBytes, encodedLength)) {
+                tableBytes = modelBytes;
+                encodedLength = lzModel.getEncodedLength();
+                blockType = LZ_BLOCK;
+            }
+        }
+
+        if (!savesEnough(tableBytes.size() + 1 + (encodedLength + Byte.SIZE - 1) / Byte.SIZE, length))
+            return writeStoredBlock(out, content);
+
+        // 2. packing the binary values of the block
+        writer.reset((int) ((encodedLength + Byte.SIZE - 1) / Byte.SIZE));
+        if (blockType == CONTEXT_BLOCK)
+            contextModel.encode(content, writer);
+        else if (blockType == LZ_BLOCK)
+            lzModel.encode(writer);
+        else
+            HuffmanCompress.encodeToBinary(content, codeTable, writer);
+        int paddingBits = writer.finish();
+
+        // 3. writing the block
+        int restLength = 1 + Integer.BYTES + tableBytes.size() + 1 + writer.getBytePosition();
+        out.writeInt(length);
+        out.writeInt(restLength);
+        out.writeByte(blockType);
+        out.writeInt(checksum(content));
+        tableBytes.writeTo(out);
+        out.writeByte(paddingBits);
+        writer.writeTo(out);
+        return BLOCK_PREFIX_LENGTH + restLength;
+    }
+
+    /**
+     * Used to write given content as a STORED_BLOCK
+     *
+     * @param out stream to write the block into
+     * @param content content to store, from its position to its limit (not moved)
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    private static int writeStoredBlock(DataOutputStream out, ByteBuffer content) throws IOException {
+        int length = content.remaining();
+        int restLength = 1 + Integer.BYTES + length;
+        out.writeInt(length);
+        out.writeInt(restLength);
+        out.writeByte(STORED_BLOCK);
+        out.writeInt(checksum(content));
+        if (content.hasArray())
+            out.write(content.array(), content.arrayOffset() + content.position(), length);
+        else { // memory mapped content is copied in chunks
+            byte[] chunk = new byte[Math.min(length, 64 * 1024)];
+            for (int copied = 0; copied < length; copied += chunk.length) {
+                int count = Math.min(chunk.length, length - copied);
+                content.get(content.position() + copied, chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+        } return BLOCK_PREFIX_LENGTH + restLength;
+    }
+
+    /**
+     * Estimates the smallest HUFFMAN_BLOCK content can be coded into from its frequency list:
+     * the order-0 entropy of content (no binary value lengths do better) plus its CodeTable
+     *
+     * @param frequencyList frequency of each byte value of content
+     * @param length number of bytes of content
+     * @return true if even that block would save less than MIN_SAVING of content
+     */
+    public static boolean isIncompressible(int[] frequencyList, int length) {
+        return isIncompressible(frequencyList, length, false);
+    }
+
+    /**
+     * Estimates the smallest HUFFMAN_BLOCK (or REPEAT_BLOCK) content can be coded into from its frequency list
+     *
+     * @param frequencyList frequency of each byte value of content
+     * @param length number of bytes of content
+     * @param tableReused true if the block may repeat the CodeTable of the previous block
+     *                    (no CodeTable is counted, the entropy still bounds the payload)
+     * @return true if even that block would save less than MIN_SAVING of content
+     */
+    public static boolean isIncompressible(int[] frequencyList, int length, boolean tableReused) {
+        double entropyBits = 0;
+        int count = 0; // number of lengths stored by the CodeTable (up to the last character)
+        for (int symbol = 0; symbol < frequencyList.length; symbol++) {
+            if (frequencyList[symbol] > 0) {
+                entropyBits += frequencyList[symbol] * Math.log((double) length / frequencyList[symbol]);
+                count = symbol + 1;
+            }
+        } entropyBits /= Math.log(2);
+        int tableLength = tableReused ? 0 : Short.BYTES + count;
+        return !savesEnough(tableLength + 1 + (long) Math.ceil(entropyBits / Byte.SIZE), length);
+    }
+
+    /**
+     * @param codedLength number of bytes of the coded block after its type and checksum
+     * @param length number of bytes of content
+     * @return true if the coded block saves at least MIN_SAVING of content over storing it
+     */
+    public static boolean savesEnough(long codedLength, int length) {
+        return codedLength <= length - length * MIN_SAVING;
+    }
+
+    /**
+     * @param tableBytes stored tables of a block type
+     * @param encodedLength number of bits of the payload of that block type
+     * @param otherTableBytes stored tables of another block type
+     * @param otherEncodedLength number of bits of the payload of the other block type
+     * @return true if the first block type gives a smaller block
+     */
+    private static boolean isSmaller(ByteArrayOutputStream tableBytes, long encodedLength,
+                                     ByteArrayOutputStream otherTableBytes, long otherEncodedLength) {
+        return (long) tableBytes.size() * Byte.SIZE + encodedLength
+                < (long) otherTableBytes.size() * Byte.SIZE + otherEncodedLength;
+    }
+
+    /**
+     * Used to decode a single block held in memory (as written by writeBlock)
+     *
+     * @param blockBytes bytes of the block, from its position to its limit (heap or memory mapped)
+     * @param output buffer to store the decoded bytes in
+     * @param offset index of the first decoded byte in output
+     * @return number of decoded bytes
+     * @throws IOException if the block is not in the expected format
+     */
+    public static int decodeBlock(ByteBuffer blockBytes, ByteBuffer output, int offset) throws IOException {
+        if (blockBytes.remaining() < BLOCK_PREFIX_LENGTH)
+            throw new IOException("invalid block in given file");
+        ByteBuffer in = blockBytes.duplicate(); // blockBytes itself is not moved
+        int rawLength = in.getInt();
+        int restLength = in.getInt();
+        if (restLength != in.remaining())
+            throw new IOException("invalid block in given file");
+        decodeRest(in, rawLength, output, offset);
+        return rawLength;
+    }
+
+    /**
+     * Used to decode the rest of a block (everything after its raw length and rest length)
+     * and to check the decoded bytes against the stored checksum
+     *
+     * @param restBytes rest of the block, from its position to its limit (heap or memory mapped)
+     * @param rawLength number of bytes to decode
+     * @param output buffer to store the decoded bytes in (its position is not used)
+     * @param offset index of the first decoded byte in output
+     * @throws IOException if the block is not in the expected format or fails the checksum
+     */
+    public static void decodeRest(ByteBuffer restBytes, int rawLength,
+                                  ByteBuffer output, int offset) throws IOException {
+        ByteBuffer in = restBytes.duplicate(); // restBytes itself is not moved
+        if (in.remaining() < 1 + Integer.BYTES)
+            throw new IOException("invalid block in given file");
+        int blockType = in.get() & 0xFF;
+        if (blockType == HUFFMAN_BLOCK || blockType == INTERLEAVED_BLOCK || blockType == STORED_BLOCK
+                || blockType == REPEAT_BLOCK || blockType == DELTA_BLOCK) {
+            // blocks of a single CodeTable (or none), decoded without allocating
+            // (a block referring to the CodeTable of a previous block fails without it)
+            new HuffmanDecompressor().decodeRest(restBytes, rawLength, output, offset);
+            return;
+        }
+        int checksum = in.getInt();
+        ContextModel contextModel = null;
+        LzModel lzModel = null;
+        if (blockType == CONTEXT_BLOCK)
+            contextModel = ContextModel.readFrom(in);
+        else if (blockType == LZ_BLOCK)
+            lzModel = LzModel.readFrom(in);
+        else
+            throw new IOException("Unknown block type " + blockType);
+        if (!in.hasRemaining())
+            throw new IOException("invalid block in given file");
+        int paddingBits = in.get() & 0xFF;
+        // payload is decoded in place (it takes the rest of the block)
+        int payloadLength = in.remaining();
+        if (rawLength <= 0 || output.limit() - offset < rawLength || paddingBits >= Byte.SIZE)
+            throw new IOException("invalid block in given file");
+
+        // decoding the payload
+        BitReader reader = new BitReader(in);
+        if (contextModel != null)
+            contextModel.decode(reader, output, offset, rawLength);
+        else
+            lzModel.decode(reader, output, offset, rawLength);
+
+        // every bit except the padding should be decoded, and the checksum should match
+        if (reader.getBitPosition() != (long) payloadLength * Byte.SIZE - paddingBits
+                || checksum(output.slice(offset, rawLength)) != checksum)
+            throw new IOException("Compressed file is corrupted (checksum mismatch)");
+    }
+
+    /**
+     * Used to compress given content into one block held in memory.
+     * Blocks encoded this way can be written into a stream in any order
+     * of completion (see writeBlock for the block content)
+     *
+     * @param content content to compress, from its position to its limit (more than 0 bytes)
+     * @param maxCodeLength maximum length of a binary value
+     * @param contextMode true to try order-1 context modelling
+     * @param matchFinder MatchFinder to try LZ77 tokens with (null to not try them)
+     * @return bytes of the block
+     */
+    public static byte[] encodeBlock(ByteBuffer content, int maxCodeLength, boolean contextMode,
+                                     MatchFinder matchFinder) {
+        int length = content.remaining();
+        ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(length / 2);
+        try {
+            writeBlock(new DataOutputStream(blockBytes), content, maxCodeLength, contextMode, matchFinder,
+                    new BitWriter(length));
+        } catch (IOException e) { // ByteArrayOutputStream does not throw IOException
+            throw new UncheckedIOException(e);
+        } return blockBytes.toByteArray();
+    }
+
+    /**
+     * Used to mark the end of a compressed file, followed by its BlockIndex
+     * @param out stream to write into
+     * @param index index of the blocks written into the stream
+     * @throws IOException if the stream can not be written
+     */
+    public static void writeEnd(DataOutputStream out, BlockIndex index) throws IOException {
+        out.writeInt(0);
+        index.skip(Integer.BYTES);
+        index.writeTo(out);
+    }
+
+    /**
+     * Used to calculate the CRC32 checksum of given bytes
+     *
+     * @param bytes bytes to refer to, from their position to their limit (not moved)
+     * @return checksum (lowest 32 bits of the CRC32 value)
+     */
+    public static int checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Used to calculate the CRC32 checksum of part of given bytes with a reused CRC32,
+     * without allocating (see HuffmanCompressor)
+     *
+     * @param crc CRC32 to calculate with (reset first)
+     * @param bytes bytes to refer to (not moved)
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return checksum (lowest 32 bits of the CRC32 value)
+     */
+    public static int checksum(CRC32 crc, ByteBuffer bytes, int offset, int length) {
+        crc.reset();
+        if (bytes.hasArray())
+            crc.update(bytes.array(), bytes.arrayOffset() + offset, length);
+        else { // direct (or read-only) buffer, read through its position and limit, then restored
+            int position = bytes.position();
+            int limit = bytes.limit();
+            bytes.limit(offset + length).position(offset);
+            crc.update(bytes);
+            bytes.limit(limit).position(position);
+        } return (int) crc.getValue();
+    }
+}
@@ -1,4 +1,9 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
 /**
@@ -7,47 +12,334 @@ import java.util.*;
 public class HuffmanCompress {
     // static attribute
     // total number of ASCII characters
-    private static final int CHARACTER_COUNT = 256;
-    // sorted binary value list
-    private static ArrayList<Node> binaryValueList = new ArrayList<>();
+    static final int CHARACTER_COUNT = 256;
+    // default maximum length of a binary value (no limit below what CodeTable can store)
+    public static final int MAX_CODE_LENGTH = CodeTable.MAX_LENGTH;
+    // binary value of each character
+    private static CodeTable codeTable = new CodeTable(CHARACTER_COUNT);
     // number of 0s added to encoded binary string
     private static String removeCount;
 
     /**
-     * Used to compress Text Files
+     * Used to compress Text Files into a single self-describing compressed file
      * @param initFile textFile to compress
      */
     public static void compressTextFile(TextFile initFile) {
+        compressTextFile(initFile, HuffmanBlock.BLOCK_SIZE);
+    }
+
+    /**
+     * Used to compress a live stream (socket, pipe, growing log file) in adaptive mode.
+     * Bytes are compressed in a single pass as they arrive, and flushed whenever
+     * no more input is ready, so no byte waits for the rest of the stream
+     *
+     * @param in stream to compress (read until its end)
+     * @param out stream to write the compressed stream into (not closed)
+     * @throws IOException if a stream can not be read or written
+     */
+    public static void compressAdaptive(InputStream in, OutputStream out) throws IOException {
+        HuffmanAdaptiveOutputStream adaptiveOut = new HuffmanAdaptiveOutputStream(out);
+        byte[] buffer = new byte[8 * 1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            adaptiveOut.write(buffer, 0, read);
+            if (in.available() == 0) // no more input is ready, sending what was written
+                adaptiveOut.flush();
+        }
+        adaptiveOut.finish();
+    }
+
+    /**
+     * Used to compress Text Files in word mode (see WordModel), which suits natural language:
+     * every distinct word and separator is a character of one large alphabet
+     * @param initFile textFile to compress (at most Integer.MAX_VALUE bytes)
+     */
+    public static void compressWordFile(TextFile initFile) {
+        long fileLength = initFile.getFileLength();
+        if (fileLength > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Word mode supports files up to " + Integer.MAX_VALUE + " bytes");
+        System.out.println("\nCOMPRESSING...\n");
+        // compressedFile -> where compressed file would be stored
+        TextFile compressedFile = new TextFile(getCustomPath(initFile, "_compressed"));
+
+        // the whole file is memory mapped (tokens may span any part of it)
+        try (OutputStream out = new BufferedOutputStream
+                (new FileOutputStream(compressedFile.getFilePath()))) {
+            compressWords(initFile.mapFile(0, fileLength), out);
+        } catch (IOException e) { // handling exceptions
+            System.err.println("Can not write to the file");
+            return;
+        }
+
+        // Comparison: Before / After / Reduction %
+        printComparison(initFile.getFileLength(), compressedFile.getFileLength());
+
+        // Additional info
+        System.out.println("compressed file stored in " + compressedFile.getFilePath());
+    }
+
+    /**
+     * Used to compress given content in word mode.
+     * Stream content:
+     * - header: WORD_MAGIC (int), number of bytes of content (long)
+     * - WordModel (see WordModel.writeTo)
+     * - number of tokens (int), CRC32 checksum of content (int),
+     *   number of 0s added to the last byte (byte), binary values of the tokens
+     *
+     * @param content content to compress, from its position to its limit (heap or memory mapped, not moved)
+     * @param out stream to write the compressed stream into
+     * @throws IOException if the stream can not be written
+     */
+    public static void compressWords(ByteBuffer content, OutputStream out) throws IOException {
+        // 1. getting the vocabulary and the tokens of content
+        WordModel model = WordModel.build(content);
+
+        // 2. packing the binary values of the tokens
+        BitWriter writer = new BitWriter((int) ((model.getEncodedLength() + Byte.SIZE - 1) / Byte.SIZE));
+        model.encode(writer);
+        int extra0s = writer.finish();
+
+        // 3. writing the header, the model and the payload
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(WordModel.WORD_MAGIC);
+        dataOut.writeLong(content.remaining());
+        model.writeTo(dataOut);
+        dataOut.writeInt(model.getTokenCount());
+        dataOut.writeInt(HuffmanBlock.checksum(content));
+        dataOut.writeByte(extra0s);
+        writer.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Used to compress Text Files into the earlier format, where the binary values
+     * are stored in a separate compressed file + _list.txt file
+     *
+     * @param initFile textFile to compress
+     */
+    public static void compressToListFile(TextFile initFile) {
         System.out.println("\nCOMPRESSING...\n");
         // compressedFile -> where compressed file would be stored
         TextFile compressedFile = new TextFile(getCustomPath(initFile, "_compressed"));
 
-        String textContent = initFile.readFile(); // 1. getting the content of initFile
-        int[] frequencyList = setFrequency(textContent); // 2. setting the frequency of content
+        byte[] content = initFile.readRawFile(); // 1. getting the exact bytes of initFile
+        // 2. setting the frequency of content (every byte value is a character of the alphabet)
+        int[] frequencyList = Histogram.count(ByteBuffer.wrap(content), ForkJoinPool.commonPool());
         TreeNode rootNode = buildTree(frequencyList); // 3. building a tree based on set frequency
 
-        // 4. generating a binaryValueList based on the built Tree
-        binaryValueList = setBinaryValueList(rootNode);
-        // 5. generating encoded data String based on lookupTable
-        // encodedString (example value) = 001001011011
-        String encodedString = genEncodedString(textContent, binaryValueList);
+        // 4. generating a codeTable based on the built Tree
+        codeTable = setBinaryValueList(rootNode);
+        // 5. packing binary values of content straight into bytes
+        byte[] bytes = encodeToBinary(content, codeTable);
 
-        // 6. writing the encoded String to required file in bits
-        byte[] bytes = convertToBinary(encodedString); // decoding encodedString into bytes
+        // 6. writing the encoded bytes to required file
         compressedFile.writeBinaryFile(bytes); // writing compressed bytes
         // 7. storing BinaryValueList (which would be referred to when decompressing)
         storeBinaryValueList(compressedFile);
 
         // Comparison: Before / After / Reduction %
-        System.out.println("Before compression: " + textContent.length());
-        System.out.println("After compression: " + bytes.length);
-        System.out.println("Reduction in size: " + ((textContent.length() - bytes.length)
-                / (double)textContent.length()) + "%");
+        printComparison(content.length, bytes.length);
 
         // Additional info
         System.out.println("compressed file stored in " + compressedFile.getFilePath());
     }
 
+    /**
+     * Used to compress Text Files in block mode.
+     * Content is split into blocks that are compressed in parallel
+     * (each with its own Tree), the compressed file is a single self-describing file
+     *
+     * @param initFile textFile to compress
+     * @param blockSize number of bytes compressed into one block
+     */
+    public static void compressTextFile(TextFile initFile, int blockSize) {
+        compressTextFile(initFile, blockSize, MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Used to compress Text Files in block mode, with limited binary value lengths.
+     * Shorter limits let the decoder resolve every binary value with a single
+     * table lookup, at a small loss in compression
+     *
+     * @param initFile textFile to compress
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     */
+    public static void compressTextFile(TextFile initFile, int blockSize, int maxCodeLength) {
+        compressTextFile(initFile, blockSize, maxCodeLength, false);
+    }
+
+    /**
+     * Used to compress Text Files in block mode, optionally with order-1 context modelling.
+     * In context mode each block may get a CodeTable per cluster of previous byte contexts,
+     * which takes longer but compresses predictable text better
+     *
+     * @param initFile textFile to compress
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     */
+    public static void compressTextFile(TextFile initFile, int blockSize, int maxCodeLength,
+                                        boolean contextMode) {
+        compressTextFile(initFile, blockSize, maxCodeLength, contextMode, null);
+    }
+
+    /**
+     * Used to compress Text Files in block mode, optionally with order-1 context modelling
+     * and an LZ77 stage. With the LZ77 stage, repeated phrases of a block are replaced by
+     * matches pointing back to their last occurrence (see MatchFinder)
+     *
+     * @param initFile textFile to compress
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     */
+    public static void compressTextFile(TextFile initFile, int blockSize, int maxCodeLength,
+                                        boolean contextMode, MatchFinder matchFinder) {
+        System.out.println("\nCOMPRESSING...\n");
+        // compressedFile -> where compressed file would be stored
+        TextFile compressedFile = new TextFile(getCustomPath(initFile, "_compressed"));
+
+        // compressing blocks of initFile in parallel (read in place from memory mapped windows),
+        // writing them in order
+        try (OutputStream out = new BufferedOutputStream
+                (new FileOutputStream(compressedFile.getFilePath()))) {
+            compressBlocks(initFile, blockSize, maxCodeLength, contextMode, matchFinder,
+                    out, ForkJoinPool.commonPool());
+        } catch (IOException e) { // handling exceptions
+            System.err.println("Can not write to the file");
+            return;
+        }
+
+        // Comparison: Before / After / Reduction %
+        printComparison(initFile.getFileLength(), compressedFile.getFileLength());
+
+        // Additional info
+        System.out.println("compressed file stored in " + compressedFile.getFilePath());
+    }
+
+    /**
+     * Used to compress given content as a compressed stream of independent blocks.
+     * Blocks are compressed in parallel on the given pool and written in order
+     *
+     * @param content content to compress
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     * @param out stream to write the compressed stream into
+     * @param pool pool to compress the blocks on
+     * @throws IOException if the stream can not be written
+     */
+    public static void compressBlocks(byte[] content, int blockSize, int maxCodeLength, boolean contextMode,
+                                      MatchFinder matchFinder, OutputStream out, ForkJoinPool pool)
+            throws IOException {
+        checkBlockOptions(blockSize, maxCodeLength);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        BlockIndex index = new BlockIndex();
+        HuffmanBlock.writeHeader(dataOut, content.length);
+        index.skip(HuffmanBlock.HEADER_LENGTH);
+        writeBlocks(ByteBuffer.wrap(content), blockSize, maxCodeLength, contextMode, matchFinder,
+                dataOut, index, pool);
+        HuffmanBlock.writeEnd(dataOut, index);
+        dataOut.flush();
+    }
+
+    /**
+     * Used to compress the content of given file as a compressed stream of independent blocks.
+     * The file is memory mapped one window (of whole blocks) at a time and read in place,
+     * so it is never copied into the heap and may be larger than 2GB
+     *
+     * @param initFile textFile to compress
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     * @param out stream to write the compressed stream into
+     * @param pool pool to compress the blocks on
+     * @throws IOException if a file can not be read or written
+     */
+    public static void compressBlocks(TextFile initFile, int blockSize, int maxCodeLength, boolean contextMode,
+                                      MatchFinder matchFinder, OutputStream out, ForkJoinPool pool)
+            throws IOException {
+        checkBlockOptions(blockSize, maxCodeLength);
+        long fileLength = initFile.getFileLength();
+        // every window holds a whole number of blocks
+        long windowSize = Math.max(1, TextFile.MAP_WINDOW / blockSize) * (long) blockSize;
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        BlockIndex index = new BlockIndex();
+        HuffmanBlock.writeHeader(dataOut, fileLength);
+        index.skip(HuffmanBlock.HEADER_LENGTH);
+        for (long position = 0; position < fileLength; position += windowSize) {
+            ByteBuffer window = initFile.mapFile(position, Math.min(windowSize, fileLength - position));
+            writeBlocks(window, blockSize, maxCodeLength, contextMode, matchFinder, dataOut, index, pool);
+        }
+        HuffmanBlock.writeEnd(dataOut, index);
+        dataOut.flush();
+    }
+
+    /**
+     * Compresses the blocks of given content in parallel and writes them in order
+     *
+     * @param content content to compress (heap or memory mapped, from index 0 to its limit)
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     * @param out stream to write the blocks into
+     * @param index index to record the written blocks in
+     * @param pool pool to compress the blocks on
+     * @throws IOException if the stream can not be written
+     */
+    private static void writeBlocks(ByteBuffer content, int blockSize, int maxCodeLength, boolean contextMode,
+                                    MatchFinder matchFinder, DataOutputStream out, BlockIndex index,
+                                    ForkJoinPool pool)
+            throws IOException {
+        // blocks compressed ahead of the written one (keeps the pool busy, bounds memory use)
+        int maxPending = 2 * pool.getParallelism();
+        ArrayDeque<ForkJoinTask<byte[]>> blockTasks = new ArrayDeque<>();
+        ArrayDeque<Integer> blockLengths = new ArrayDeque<>();
+
+        for (int offset = 0; offset < content.limit() || !blockTasks.isEmpty(); ) {
+            // submitting blocks, each one is compressed independently
+            while (offset < content.limit() && blockTasks.size() < maxPending) {
+                ByteBuffer block = content.slice(offset, Math.min(blockSize, content.limit() - offset));
+                blockTasks.add(pool.submit(() ->
+                        HuffmanBlock.encodeBlock(block, maxCodeLength, contextMode, matchFinder)));
+                blockLengths.add(block.limit());
+                offset += block.limit();
+            }
+            // writing the oldest block (blocks are written in order)
+            byte[] blockBytes = blockTasks.remove().join();
+            out.write(blockBytes);
+            index.addBlock(blockBytes.length, blockLengths.remove());
+        }
+    }
+
+    /**
+     * Ensures the block mode options are valid
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value
+     */
+    private static void checkBlockOptions(int blockSize, int maxCodeLength) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Block size should be positive");
+        if (maxCodeLength < Byte.SIZE || maxCodeLength > CodeTable.MAX_LENGTH)
+            throw new IllegalArgumentException("Maximum code length should be 8 to " + CodeTable.MAX_LENGTH);
+    }
+
+    /**
+     * Used to print the size comparison of a compressed file
+     * @param before size before compression
+     * @param after size after compression
+     */
+    private static void printComparison(long before, long after) {
+        System.out.println("Before compression: " + before);
+        System.out.println("After compression: " + after);
+        System.out.println("Reduction in size: " + ((before - after) / (double) before) + "%");
+    }
+
     /**
      * Decodes the given encodedString into encodedBytes
      * @param encodedString encodedString to refer to
@@ -84,21 +376,121 @@ public class HuffmanCompress {
 
 
     /**
-     * Gets the frequency of characters of given String
+     * Encodes given textContent (as UTF-8 bytes) straight into encodedBytes,
+     * without building an encodedString.
+     * The result is identical to convertToBinary(genEncodedString(textContent, codeTable))
+     *
+     * @param textContent content to encode
+     * @param codeTable codeTable to refer to
+     * @return the encodedBytes
+     */
+    public static byte[] encodeToBinary(String textContent, CodeTable codeTable) {
+        return encodeToBinary(textContent.getBytes(StandardCharsets.UTF_8), codeTable);
+    }
+
+    /**
+     * Encodes given byte content straight into encodedBytes, without building an encodedString.
+     * Binary values are kept as bits plus a length and packed by a BitWriter
+     *
+     * @param content content to encode
+     * @param codeTable codeTable to refer to
+     * @return the encodedBytes (followed by one extra byte, as done by convertToBinary)
+     */
+    public static byte[] encodeToBinary(byte[] content, CodeTable codeTable) {
+        // counting the encoded bits first, so that encodedBytes are allocated only once
+        long bitLength = 0;
+        for (byte character : content)
+            bitLength += codeTable.getLength(character & 0xFF);
+        // one extra byte is kept at the end (as done by convertToBinary)
+        BitWriter writer = new BitWriter((int) ((bitLength + Byte.SIZE - 1) / Byte.SIZE) + 1);
+
+        encodeToBinary(content, 0, content.length, codeTable, writer);
+        // number of 0s added to the last byte assigned to removeCount
+        removeCount = String.valueOf(writer.finish());
+        writer.writeBits(0, Byte.SIZE); // extra byte
+        writer.finish();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes part of given byte content into the given BitWriter
+     *
+     * @param content content to encode
+     * @param offset index of the first byte to encode
+     * @param length number of bytes to encode
+     * @param codeTable codeTable to refer to
+     * @param writer BitWriter to pack the binary values into
+     */
+    public static void encodeToBinary(byte[] content, int offset, int length,
+                                      CodeTable codeTable, BitWriter writer) {
+        encodeToBinary(ByteBuffer.wrap(content, offset, length), codeTable, writer);
+    }
+
+    /**
+     * Encodes given byte content (heap or memory mapped) into the given BitWriter
+     *
+     * @param content content to encode, from its position to its limit (not moved)
+     * @param codeTable codeTable to refer to
+     * @param writer BitWriter to pack the binary values into
+     */
+    public static void encodeToBinary(ByteBuffer content, CodeTable codeTable, BitWriter writer) {
+        for (int i = content.position(); i < content.limit(); i++) {
+            int character = content.get(i) & 0xFF;
+            writer.writeBits(codeTable.getCode(character), codeTable.getLength(character));
+        }
+    }
+
+    /**
+     * Encodes given byte content (heap or memory mapped) into several BitWriters,
+     * character i going to writer i % writers.length (see HuffmanBlock.INTERLEAVED_BLOCK)
+     *
+     * @param content content to encode, from its position to its limit (not moved)
+     * @param codeTable codeTable to refer to
+     * @param writers BitWriters to pack the binary values into, one per stream
+     */
+    public static void encodeInterleaved(ByteBuffer content, CodeTable codeTable, BitWriter[] writers) {
+        for (int i = content.position(), stream = 0; i < content.limit(); i++) {
+            int character = content.get(i) & 0xFF;
+            writers[stream].writeBits(codeTable.getCode(character), codeTable.getLength(character));
+            if (++stream == writers.length)
+                stream = 0;
+        }
+    }
+
+    /**
+     * Gets the frequency of characters of given String.
+     * Characters are counted as their UTF-8 bytes, so that every character
+     * (not only the first 256) can be encoded and decoded back
+     *
      * @param textContent given String content
-     * @return int[] containing character index and their frequency
+     * @return int[] containing byte value index and their frequency
      */
     public static int[] setFrequency(String textContent) {
-        // frequency list initiated with size 256 (number of ASCII characters)
-        int[] frequencyList = new int[CHARACTER_COUNT];
-        for (char character : textContent.toCharArray()) {
-            try { // current character frequency
-                frequencyList[character]++;
-            } catch (IndexOutOfBoundsException e) {
-                // character is outside ASCII bound
-                frequencyList[63]++; // adding special character as '?'
-            }
-        } return frequencyList;
+        byte[] content = textContent.getBytes(StandardCharsets.UTF_8);
+        return setFrequency(content, 0, content.length);
+    }
+
+    /**
+     * Gets the frequency of bytes in part of given byte content
+     *
+     * @param content given byte content
+     * @param offset index of the first byte to count
+     * @param length number of bytes to count
+     * @return int[] containing byte value index and their frequency
+     */
+    public static int[] setFrequency(byte[] content, int offset, int length) {
+        return setFrequency(ByteBuffer.wrap(content, offset, length));
+    }
+
+    /**
+     * Gets the frequency of bytes in given byte content (heap or memory mapped),
+     * see Histogram for the counting
+     *
+     * @param content given byte content, from its position to its limit (not moved)
+     * @return int[] containing byte value index and their frequency
+     */
+    public static int[] setFrequency(ByteBuffer content) {
+        return Histogram.count(content);
     }
 
     /**
@@ -106,17 +498,17 @@ public class HuffmanCompress {
      * @param frequencyList frequencyList to use when constructing the Tree
      * @return returns the Constructed Tree
      */
-    private static TreeNode buildTree(int[] frequencyList) {
+    static TreeNode buildTree(int[] frequencyList) {
         // initialising the Tree object
         Tree tree = new Tree();
 
         for (char i = 0; i < CHARACTER_COUNT; i++) {
             if(frequencyList[i] > 0) { // adding an empty TreeNode if given character has frequency > 0
-                tree.nodeList.add(new TreeNode(i, frequencyList[i], null, null)); // new leaf node
+                tree.addNode(new TreeNode(i, frequencyList[i], null, null)); // new leaf node
             }
         }
-        // extreme case with nodeList.size() == 1
-        if (tree.nodeList.size() == 1) {
+        // extreme case with tree.size() == 1
+        if (tree.size() == 1) {
             TreeNode child1 = tree.getMinNode();
             TreeNode child2 = new TreeNode('\0', 1, null, null);
             return new TreeNode
@@ -124,7 +516,7 @@ public class HuffmanCompress {
         }
 
         // loop used to construct the tree
-        while (tree.nodeList.size() > 1) {
+        while (tree.size() > 1) {
             // getting two nodes from the Tree (nodes with lowest frequency)
             TreeNode child1 = tree.getMinNode();
             TreeNode child2 = tree.getMinNode();
@@ -134,7 +526,7 @@ public class HuffmanCompress {
             assert child2 != null;
             TreeNode parentNode = new TreeNode
                     ('\0', child1.getFrequency() + child2.getFrequency(), child1, child2);
-            tree.nodeList.add(parentNode); // adding constructed parent Node into the nodeList
+            tree.addNode(parentNode); // adding constructed parent Node into the Tree
 
         } return tree.getMinNode(); // returning the root value
     }
@@ -142,59 +534,108 @@ public class HuffmanCompress {
     /**
      * Used to initiate the assignment of characters with their binary value
      * @param rootNode root TreeNode of the Tree
-     * @return array containing characters and their binary value
+     * @return codeTable containing characters and their binary value
      */
-    public static ArrayList<Node> setBinaryValueList(TreeNode rootNode) {
-        ArrayList<Node> binaryValueList = new ArrayList<>();
+    public static CodeTable setBinaryValueList(TreeNode rootNode) {
+        CodeTable codeTable = new CodeTable(CHARACTER_COUNT);
         // assigning values using recursion
-        genBinaryValueList(rootNode, "", binaryValueList);
-        return binaryValueList;
+        genBinaryValueList(rootNode, 0, 0, codeTable);
+        return codeTable;
     }
 
     /**
      * Assigns binary values of each character using recursion.
      * Child Nodes of rootNode are called until reaching a Leaf Node (binary values 0/1
      * also being added in the process), where character and final binary value
-     * is added to binaryValueList
+     * is added to codeTable
      *
      * @param rootNode current rootNode
-     * @param code accumulated binary code
-     * @param binaryValueList binaryValueList to store in
+     * @param code accumulated binary code (as bits)
+     * @param length number of accumulated bits
+     * @param codeTable codeTable to store in
      */
-    private static void genBinaryValueList(TreeNode rootNode,
-                                           String code,
-                                           ArrayList<Node> binaryValueList) {
-        if (rootNode.isLeaf()) // if Lead Node is reached
+    private static void genBinaryValueList(TreeNode rootNode, long code, int length,
+                                           CodeTable codeTable) {
+        if (rootNode.isLeaf()) { // if Lead Node is reached
             // final binary value and character are added
-            binaryValueList.add(new Node(rootNode.getValue(), code));
-        else {
+            // (the first one is kept, the extra Node of a single character Tree has '\0' too)
+            if (codeTable.getLength(rootNode.getValue()) == 0)
+                codeTable.setCode(rootNode.getValue(), code, length);
+        } else {
             // both sides of the rootNode are called (process follows until reaching a Leaf Node)
             // respective binary codes are also accumulated
-            genBinaryValueList(rootNode.getChild1(), code + '0', binaryValueList);
-            genBinaryValueList(rootNode.getChild2(), code + '1', binaryValueList);
+            genBinaryValueList(rootNode.getChild1(), code << 1, length + 1, codeTable);
+            genBinaryValueList(rootNode.getChild2(), code << 1 | 1, length + 1, codeTable);
         }
     }
 
     /**
-     * Combines binary values of characters in the order of initial text Content
+     * Used to get the length of the binary value of each character, none longer than maxCodeLength.
+     * Lengths come from the Tree (built on arrays, see Tree.buildCodeLengths), unless
+     * the Tree is too deep, in which case optimal limited lengths are calculated
+     * (see Tree.limitCodeLengths)
+     *
+     * @param frequencyList frequency of each character
+     * @param maxCodeLength maximum length of a binary value
+     * @return length of the binary value of each character (0 -> frequency of 0)
+     */
+    public static int[] setCodeLengths(int[] frequencyList, int maxCodeLength) {
+        int[] lengths = Tree.buildCodeLengths(frequencyList);
+        for (int length : lengths) {
+            if (length > maxCodeLength)
+                return Tree.limitCodeLengths(frequencyList, maxCodeLength);
+        } return lengths;
+    }
+
+    /**
+     * Used to get the length of the binary value of each character (depth of its Leaf Node).
+     * Lengths are enough to build a canonical CodeTable (see CodeTable.fromLengths)
+     *
+     * @param rootNode root TreeNode of the Tree
+     * @return length of the binary value of each character (0 -> character is not in the Tree)
+     */
+    public static int[] setCodeLengths(TreeNode rootNode) {
+        int[] lengths = new int[CHARACTER_COUNT];
+        genCodeLengths(rootNode, 0, lengths);
+        return lengths;
+    }
+
+    /**
+     * Assigns the depth of each Leaf Node to its character using recursion
+     *
+     * @param rootNode current rootNode
+     * @param depth depth of the current rootNode
+     * @param lengths lengths to store in
+     */
+    private static void genCodeLengths(TreeNode rootNode, int depth, int[] lengths) {
+        if (rootNode.isLeaf()) {
+            // the first one is kept (the extra Node of a single character Tree has '\0' too)
+            if (lengths[rootNode.getValue()] == 0)
+                lengths[rootNode.getValue()] = depth;
+        } else {
+            genCodeLengths(rootNode.getChild1(), depth + 1, lengths);
+            genCodeLengths(rootNode.getChild2(), depth + 1, lengths);
+        }
+    }
+
+    /**
+     * Combines binary values of characters (UTF-8 bytes) in the order of initial text Content
      *
      * @param textContent content of the file to refer to
-     * @param binaryValueList binaryValueList to refer to
+     * @param codeTable codeTable to refer to
      * @return generated encodedString
      */
-    public static String genEncodedString(String textContent,
-                                          ArrayList<Node> binaryValueList) {
+    public static String genEncodedString(String textContent, CodeTable codeTable) {
+        // binary value String of each character (looked up by character)
+        String[] pointers = new String[CHARACTER_COUNT];
+        for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++)
+            pointers[symbol] = codeTable.getPointer(symbol);
+
         StringBuilder builder = new StringBuilder();
-        // for each character in textContent
-        for (char character : textContent.toCharArray()) {
-            for (Node node : binaryValueList) {
-                if (node.getValue() == character) { // if character matches to Node
-                    // adds encoded value of current character
-                    builder.append(node.getPointer());
-                    break;
-                }
-            }
-        } return builder.toString(); // returns built encodedString
+        // for each byte of textContent (adds encoded value of current byte)
+        for (byte character : textContent.getBytes(StandardCharsets.UTF_8))
+            builder.append(pointers[character & 0xFF]);
+        return builder.toString(); // returns built encodedString
     }
 
     /**
@@ -206,7 +647,7 @@ public class HuffmanCompress {
     public static void storeBinaryValueList(TextFile compressedFile) {
         TextFile listFile = new TextFile(getCustomPath(compressedFile, "_list"));
 
-        listFile.writeListFile(binaryValueList);
+        listFile.writeListFile(codeTable);
         // removeCount is also added to the end of the file
         // removeCount helps determine how many 0s where added to encodedString
         // when decoding encodedString into encodedBytes
@@ -228,7 +669,9 @@ public class HuffmanCompress {
 
     /**
      * Used as a UI when compressing
-     * @param args command line user input
+     * @param args command line user input ("words" for word mode, or optional block size in KB,
+     *             optional maximum code length, optional "context" for order-1 context modelling
+     *             or an LZ77 level from 1 to 9, optional LZ77 window in KB)
      */
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
@@ -239,8 +682,21 @@ public class HuffmanCompress {
         // checks if filePath ends with ".txt"
         if (filePath.endsWith(".txt")) {
             TextFile file1 = new TextFile(filePath);
-            // compressTextFile
-            compressTextFile(file1);
+            // compressTextFile (with the given block size if there is one)
+            if (args.length > 0 && args[0].equals("words"))
+                compressWordFile(file1);
+            else if (args.length > 2 && args[2].equals("context"))
+                compressTextFile(file1, Integer.parseInt(args[0]) * 1024, Integer.parseInt(args[1]), true);
+            else if (args.length > 2) {
+                int windowSize = args.length > 3 ? Integer.parseInt(args[3]) * 1024 : MatchFinder.DEFAULT_WINDOW;
+                compressTextFile(file1, Integer.parseInt(args[0]) * 1024, Integer.parseInt(args[1]), false,
+                        new MatchFinder(Integer.parseInt(args[2]), windowSize));
+            } else if (args.length > 1)
+                compressTextFile(file1, Integer.parseInt(args[0]) * 1024, Integer.parseInt(args[1]));
+            else if (args.length > 0)
+                compressTextFile(file1, Integer.parseInt(args[0]) * 1024);
+            else
+                compressTextFile(file1);
         } else
             System.err.println("Given path should be a txt file");
     }
@@ -0,0 +1,234 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Output stream compressing everything written into it.
+ * Written bytes are collected into a fixed-size block, each full block
+ * is compressed with its own Huffman Tree and written out straight away,
+ * so memory use does not depend on the size of the compressed content.
+ * Optionally blocks reuse (or change) the CodeTable of the block before them
+ * when that is smaller, which suits small blocks flushed often (the stream is then chained:
+ * it is decoded in order, by HuffmanDecompressInputStream, see BlockIndex)
+ */
+public class HuffmanCompressOutputStream extends OutputStream {
+    // instance attributes
+    // stream the compressed blocks are written into
+    private final DataOutputStream out;
+    // bytes of the current block
+    private final byte[] block;
+    // number of bytes in the current block
+    private int blockLength;
+    // BitWriter reused for the payload of every block (null when compressor is used)
+    private final BitWriter writer;
+    // maximum length of a binary value
+    private final int maxCodeLength;
+    // true to try order-1 context modelling on each block
+    private final boolean contextMode;
+    // MatchFinder of the LZ77 stage (null for no LZ77 stage)
+    private final MatchFinder matchFinder;
+    // HuffmanCompressor reused for every block, and the buffer it writes blocks into
+    // (only without context modelling and LZ77 stage, null otherwise)
+    private final HuffmanCompressor compressor;
+    private final ByteBuffer compressedBlock;
+    // index of the written blocks (written at the end of the stream)
+    private final BlockIndex index;
+    // true once the end of the stream is written
+    private boolean finished;
+
+    /**
+     * Used to write a single byte
+     * @param b byte to write (lowest 8 bits)
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length)
+            writeBlock();
+    }
+
+    /**
+     * Used to write part of a byte array
+     *
+     * @param bytes bytes to write
+     * @param offset index of the first byte to write
+     * @param length number of bytes to write
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            // copying as much as fits into the current block
+            int copied = Math.min(length, block.length - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, copied);
+            blockLength += copied;
+            offset += copied;
+            length -= copied;
+
+            if (blockLength == block.length)
+                writeBlock();
+        }
+    }
+
+    /**
+     * Used to compress the bytes written so far (as a smaller block) and flush them
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        out.flush();
+    }
+
+    /**
+     * Used to compress the remaining bytes and write the end of the stream,
+     * without closing the underlying stream
+     *
+     * @throws IOException if the stream can not be written
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        writeBlock();
+        HuffmanBlock.writeEnd(out, index);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Used to finish and close the stream
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Compresses the current block (if it contains any bytes)
+     * @throws IOException if the stream can not be written
+     */
+    private void writeBlock() throws IOException {
+        if (blockLength == 0)
+            return;
+        int compressedLength;
+        if (compressor != null) {
+            compressedBlock.clear();
+            compressedLength = compressor.compress(ByteBuffer.wrap(block, 0, blockLength), compressedBlock);
+            out.write(compressedBlock.array(), 0, compressedLength);
+        } else
+            compressedLength = HuffmanBlock.writeBlock
+                    (out, ByteBuffer.wrap(block, 0, blockLength), maxCodeLength, contextMode, matchFinder, writer);
+        index.addBlock(compressedLength, blockLength);
+        blockLength = 0;
+    }
+
+    /**
+     * Ensures nothing is written after the end of the stream
+     * @throws IOException if the stream is already finished
+     */
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("Stream is already finished");
+    }
+
+    /**
+     * Constructor for HuffmanCompressOutputStream object (with default block size)
+     * @param out stream to write the compressed content into
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanCompressOutputStream(OutputStream out) throws IOException {
+        this(out, HuffmanBlock.BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor for HuffmanCompressOutputStream object
+     * @param out stream to write the compressed content into
+     * @param blockSize number of bytes compressed into one block
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanCompressOutputStream(OutputStream out, int blockSize) throws IOException {
+        this(out, blockSize, HuffmanCompress.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Constructor for HuffmanCompressOutputStream object with limited binary value lengths
+     * @param out stream to write the compressed content into
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanCompressOutputStream(OutputStream out, int blockSize, int maxCodeLength)
+            throws IOException {
+        this(out, blockSize, maxCodeLength, false);
+    }
+
+    /**
+     * Constructor for HuffmanCompressOutputStream object, optionally with order-1 context modelling
+     * @param out stream to write the compressed content into
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanCompressOutputStream(OutputStream out, int blockSize, int maxCodeLength,
+                                       boolean contextMode) throws IOException {
+        this(out, blockSize, maxCodeLength, contextMode, null);
+    }
+
+    /**
+     * Constructor for HuffmanCompressOutputStream object, optionally with order-1 context modelling
+     * and an LZ77 stage (matches only point back inside their own block)
+     * @param out stream to write the compressed content into
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanCompressOutputStream(OutputStream out, int blockSize, int maxCodeLength,
+                                       boolean contextMode, MatchFinder matchFinder) throws IOException {
+        this(out, blockSize, maxCodeLength, contextMode, matchFinder, false);
+    }
+
+    /**
+     * Constructor for HuffmanCompressOutputStream object, optionally with order-1 context modelling,
+     * an LZ77 stage, or blocks reusing the CodeTable of the block before them
+     * @param out stream to write the compressed content into
+     * @param blockSize number of bytes compressed into one block
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     * @param contextMode true to try order-1 context modelling on each block
+     * @param matchFinder MatchFinder of the LZ77 stage (null for no LZ77 stage)
+     * @param reuseTables true to let blocks reuse or change the CodeTable of the previous block
+     *                    (only without context modelling and LZ77 stage)
+     * @throws IOException if the stream can not be written
+     */
+    public HuffmanCompressOutputStream(OutputStream out, int blockSize, int maxCodeLength, boolean contextMode,
+                                       MatchFinder matchFinder, boolean reuseTables) throws IOException {
+        if (maxCodeLength < Byte.SIZE || maxCodeLength > CodeTable.MAX_LENGTH)
+            throw new IllegalArgumentException("Maximum code length should be 8 to " + CodeTable.MAX_LENGTH);
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Block size should be positive");
+        boolean plain = !contextMode && matchFinder == null;
+        if (reuseTables && !plain)
+            throw new IllegalArgumentException("CodeTables are only reused without context modelling and LZ77 stage");
+        this.out = new DataOutputStream(out);
+        this.block = new byte[blockSize];
+        this.writer = plain ? null : new BitWriter(blockSize);
+        this.maxCodeLength = maxCodeLength;
+        this.contextMode = contextMode;
+        this.matchFinder = matchFinder;
+        this.compressor = plain ? new HuffmanCompressor(maxCodeLength, false, reuseTables) : null;
+        this.compressedBlock = plain ? ByteBuffer.allocate(HuffmanCompressor.maxCompressedLength(blockSize)) : null;
+        this.index = new BlockIndex(reuseTables);
+        HuffmanBlock.writeHeader(this.out, -1); // length is not known in advance
+        index.skip(HuffmanBlock.HEADER_LENGTH);
+    }
+}
@@ -0,0 +1,516 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+
+/**
+ * HuffmanCompressor object compresses content into single blocks (HUFFMAN_BLOCK, see HuffmanBlock),
+ * keeping its frequency list, work arrays, CodeTable and BitWriters between calls.
+ * Once its BitWriters have grown to the largest block, compressing allocates nothing.
+ * In interleaved mode, blocks are INTERLEAVED_BLOCKs: binary values are limited to
+ * HuffmanDecoder.TABLE_BITS bits and spread over STREAM_COUNT streams, so that
+ * HuffmanDecoder.decodeInterleaved decodes the streams in the same loop (faster decoding,
+ * slightly larger blocks). Content that coding would not make MIN_SAVING smaller
+ * is written as a STORED_BLOCK (as HuffmanBlock.writeBlock does).
+ * When tables are reused, each block is written with the cheapest of its own CodeTable,
+ * the changes from the CodeTable of the previous block (DELTA_BLOCK) or the previous CodeTable
+ * as it is (REPEAT_BLOCK), which saves most of the table on small blocks of similar content,
+ * but the blocks have to be decoded in order by the same HuffmanDecompressor. A CodeTable giving
+ * a binary value to every character seen in the stream is written when it costs less, and also
+ * for the first block or characters not seen before, even if that block alone does not pay for it
+ * (the blocks repeating it do).
+ * A HuffmanCompressor holds no static state, but is only used by one thread at a time:
+ * threads of a pool keep one each (for example in a ThreadLocal).
+ * Blocks are read back by HuffmanDecompressor (or HuffmanBlock.decodeBlock)
+ */
+public class HuffmanCompressor {
+    // static attributes
+    // number of possible characters
+    private static final int CHARACTER_COUNT = HuffmanCompress.CHARACTER_COUNT;
+    // number of bitstreams of an INTERLEAVED_BLOCK
+    private static final int STREAM_COUNT = HuffmanBlock.STREAM_COUNT;
+    // largest number of bytes a block adds to its content: raw length, rest length, block type,
+    // checksum, CodeTable, padding bits and length of each stream (the payload is never longer
+    // than the content, as 8 bit binary values would be, plus a partly filled last byte per stream)
+    private static final int BLOCK_OVERHEAD = 2 * Integer.BYTES + 1 + Integer.BYTES
+            + Short.BYTES + CHARACTER_COUNT + STREAM_COUNT * (1 + Integer.BYTES);
+
+    // instance attributes
+    // maximum length of a binary value
+    private final int maxCodeLength;
+    // true to write INTERLEAVED_BLOCKs
+    private final boolean interleaved;
+    // true to write REPEAT_BLOCKs and DELTA_BLOCKs
+    private final boolean reuseTables;
+    // frequency of each character and the sub-histograms they are counted in
+    private final int[] frequencyList = new int[CHARACTER_COUNT];
+    private final int[] stripes = new int[Histogram.WORK_LENGTH];
+    // characters with frequency > 0 sorted by frequency (frequency << 32 | character)
+    private final long[] leaves = new long[CHARACTER_COUNT];
+    // Tree built in place over the sorted leaves (ends up holding the length of each leaf)
+    private final long[] tree = new long[CHARACTER_COUNT];
+    // length of the binary value of each character
+    private int[] lengths = new int[CHARACTER_COUNT];
+    // work array of CodeTable.setCanonicalCodes
+    private final long[] nextCode = new long[CodeTable.MAX_LENGTH + 1];
+    // codeTable of the current block
+    private CodeTable codeTable = new CodeTable(CHARACTER_COUNT);
+    // lengths and codeTable of the previous block (swapped with the current ones when tables are reused)
+    private int[] previousLengths;
+    private CodeTable previousTable;
+    // true once a block has a codeTable the next block can refer to
+    private boolean hasPrevious;
+    // frequency of each character in the stream so far, halved at every block (at least 1 once seen),
+    // and the frequencies of the block plus the stream, which the covering codeTable is built from
+    private final int[] history;
+    private final int[] tableFrequencies;
+    // lengths and codeTable of the other candidate of the block (swapped with the current ones):
+    // built from the block alone, or covering every character seen in the stream
+    private int[] otherLengths;
+    private CodeTable otherTable;
+    // BitWriter reused for the payload of every block, one per stream in interleaved mode
+    private final BitWriter writer = new BitWriter(0);
+    private final BitWriter[] streamWriters;
+    // CRC32 reused for the checksum of every block
+    private final CRC32 crc = new CRC32();
+    // package-merge work arrays (allocated the first time a Tree is deeper than maxCodeLength)
+    private boolean[][] isLeaf;
+    private long[] levelWeights;
+    private long[] mergedWeights;
+
+    /**
+     * Used to compress given content into one block, written into given buffer
+     * (same block as HuffmanBlock.writeBlock without context modelling or LZ77 stage,
+     * or an INTERLEAVED_BLOCK in interleaved mode). Empty content is written as a raw length of 0
+     *
+     * @param content content to compress, from its position to its limit (heap or memory mapped, not moved)
+     * @param out buffer to write the block into (big-endian, moved past the block)
+     * @return number of bytes written
+     * @throws BufferOverflowException if out has less than maxCompressedLength(content.remaining()) bytes
+     *         remaining and the block does not fit (nothing is written)
+     */
+    public int compress(ByteBuffer content, ByteBuffer out) {
+        int length = content.remaining();
+        if (length == 0) {
+            out.putInt(0);
+            return Integer.BYTES;
+        }
+
+        // 1. counting the characters of content (content close to uniform is stored)
+        Histogram.count(content, frequencyList, stripes);
+        boolean newCharacters = reuseTables && addHistory();
+        if (HuffmanBlock.isIncompressible(frequencyList, length, reuseTables))
+            return compressStored(content, out);
+        // 2. building the canonical codeTable of the block
+        setCodeLengths(frequencyList);
+        codeTable.setCanonicalCodes(lengths, nextCode);
+        long payloadLength = (codeTable.getEncodedLength(frequencyList) + Byte.SIZE - 1) / Byte.SIZE;
+        int tableLength = getTableLength();
+        // the first codeTable of a stream, or one for characters not seen before in it, only has to be
+        // paid back by the blocks repeating it (which happens at most once per character)
+        boolean paidBack = reuseTables && (!hasPrevious || newCharacters);
+        if (reuseTables) {
+            // the codeTable covering every character seen in the stream (that the blocks after it can repeat)
+            // is written instead if it costs less, or has to be paid back
+            swapCandidates();
+            setCodeLengths(tableFrequencies);
+            codeTable.setCanonicalCodes(lengths, nextCode);
+            long coveringPayloadLength = (codeTable.getEncodedLength(frequencyList) + Byte.SIZE - 1) / Byte.SIZE;
+            int coveringTableLength = getTableLength();
+            if (paidBack || coveringTableLength + coveringPayloadLength < tableLength + payloadLength) {
+                payloadLength = coveringPayloadLength;
+                tableLength = coveringTableLength;
+            } else
+                swapCandidates(); // back to the codeTable of the block alone
+        }
+        int blockType = tableLength < codeTable.getStoredLength()
+                ? HuffmanBlock.DELTA_BLOCK : HuffmanBlock.HUFFMAN_BLOCK;
+        if (hasPrevious && fitsPreviousTable()) {
+            // the previous codeTable itself may cost less
+            long repeatLength = (previousTable.getEncodedLength(frequencyList) + Byte.SIZE - 1) / Byte.SIZE;
+            if (repeatLength <= tableLength + payloadLength) {
+                blockType = HuffmanBlock.REPEAT_BLOCK;
+                tableLength = 0;
+                payloadLength = repeatLength;
+            }
+        }
+        // padding bits byte, or the padding bits and length of each stream (and a partly filled last byte each)
+        int streamBytes = interleaved ? STREAM_COUNT * (1 + Integer.BYTES) : 1;
+        int paidTableLength = paidBack ? 0 : tableLength;
+        if (!HuffmanBlock.savesEnough(paidTableLength + streamBytes + payloadLength, length))
+            return compressStored(content, out);
+        if (interleaved)
+            return compressStreams(content, out);
+        // 3. packing the binary values of the block
+        CodeTable blockTable = blockType == HuffmanBlock.REPEAT_BLOCK ? previousTable : codeTable;
+        writer.reset((int) payloadLength);
+        HuffmanCompress.encodeToBinary(content, blockTable, writer);
+        int paddingBits = writer.finish();
+
+        // 4. writing the block
+        int restLength = 1 + Integer.BYTES + tableLength + 1 + writer.getBytePosition();
+        if (out.remaining() < 2 * Integer.BYTES + restLength)
+            throw new BufferOverflowException();
+        out.putInt(length);
+        out.putInt(restLength);
+        out.put((byte) blockType);
+        out.putInt(HuffmanBlock.checksum(crc, content, content.position(), length));
+        if (blockType == HuffmanBlock.HUFFMAN_BLOCK)
+            codeTable.writeTo(out);
+        else if (blockType == HuffmanBlock.DELTA_BLOCK)
+            writeChanges(out);
+        out.put((byte) paddingBits);
+        writer.writeTo(out);
+        if (reuseTables && blockType != HuffmanBlock.REPEAT_BLOCK)
+            keepCodeTable();
+        return 2 * Integer.BYTES + restLength;
+    }
+
+    /**
+     * Used to start a new stream: the next block does not refer to the CodeTable of the previous block
+     */
+    public void reset() {
+        hasPrevious = false;
+        if (reuseTables)
+            Arrays.fill(history, 0);
+    }
+
+    /**
+     * Adds the frequencies of the block to the history of the stream, keeping their sum in tableFrequencies
+     * @return true if the block holds characters not seen before in the stream
+     */
+    private boolean addHistory() {
+        boolean newCharacters = false;
+        for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++) {
+            newCharacters |= frequencyList[symbol] > 0 && history[symbol] == 0;
+            long frequency = frequencyList[symbol];
+            tableFrequencies[symbol] = (int) Math.min(Integer.MAX_VALUE, frequency + history[symbol]);
+            history[symbol] = (int) Math.min(Integer.MAX_VALUE, (history[symbol] + 1) / 2 + frequency);
+        } return newCharacters;
+    }
+
+    /**
+     * @return number of bytes the codeTable takes in the block: its lengths,
+     *         or their changes from the previous codeTable when those take fewer bytes
+     */
+    private int getTableLength() {
+        int storedLength = codeTable.getStoredLength();
+        return hasPrevious ? Math.min(storedLength, Short.BYTES + 2 * countChanges()) : storedLength;
+    }
+
+    /**
+     * @return number of characters whose length differs from the previous block
+     */
+    private int countChanges() {
+        int changes = 0;
+        for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++) {
+            if (lengths[symbol] != previousLengths[symbol])
+                changes++;
+        } return changes;
+    }
+
+    /**
+     * @return true if every character of the block has a binary value in the previous codeTable
+     */
+    private boolean fitsPreviousTable() {
+        for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++) {
+            if (frequencyList[symbol] > 0 && previousLengths[symbol] == 0)
+                return false;
+        } return true;
+    }
+
+    /**
+     * Writes the changes of a DELTA_BLOCK: each character whose length differs from the previous block
+     * @param out buffer to write the changes into
+     */
+    private void writeChanges(ByteBuffer out) {
+        out.putShort((short) countChanges());
+        for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++) {
+            if (lengths[symbol] != previousLengths[symbol]) {
+                out.put((byte) symbol);
+                out.put((byte) lengths[symbol]);
+            }
+        }
+    }
+
+    /**
+     * Swaps the current lengths and codeTable with the other candidate of the block
+     */
+    private void swapCandidates() {
+        int[] swapLengths = otherLengths;
+        otherLengths = lengths;
+        lengths = swapLengths;
+        CodeTable swapTable = otherTable;
+        otherTable = codeTable;
+        codeTable = swapTable;
+    }
+
+    /**
+     * Makes the codeTable of the written block the previous one (swapping the arrays, nothing is copied)
+     */
+    private void keepCodeTable() {
+        int[] swapLengths = previousLengths;
+        previousLengths = lengths;
+        lengths = swapLengths;
+        CodeTable swapTable = previousTable;
+        previousTable = codeTable;
+        codeTable = swapTable;
+        hasPrevious = true;
+    }
+
+    /**
+     * Writes content as a STORED_BLOCK
+     *
+     * @param content content to store (not moved)
+     * @param out buffer to write the block into (moved past the block)
+     * @return number of bytes written
+     */
+    private int compressStored(ByteBuffer content, ByteBuffer out) {
+        int length = content.remaining();
+        int restLength = 1 + Integer.BYTES + length;
+        if (out.remaining() < 2 * Integer.BYTES + restLength)
+            throw new BufferOverflowException();
+        out.putInt(length);
+        out.putInt(restLength);
+        out.put((byte) HuffmanBlock.STORED_BLOCK);
+        out.putInt(HuffmanBlock.checksum(crc, content, content.position(), length));
+        out.put(content.slice(content.position(), length));
+        return 2 * Integer.BYTES + restLength;
+    }
+
+    /**
+     * Packs the binary values of content into the streams of an INTERLEAVED_BLOCK
+     * and writes the block (codeTable is already set)
+     *
+     * @param content content to compress (not moved)
+     * @param out buffer to write the block into (moved past the block)
+     * @return number of bytes written
+     */
+    private int compressStreams(ByteBuffer content, ByteBuffer out) {
+        // 1. packing the binary values of each stream
+        int capacity = (int) ((codeTable.getEncodedLength(frequencyList) / STREAM_COUNT + Long.SIZE) / Byte.SIZE);
+        for (BitWriter streamWriter : streamWriters)
+            streamWriter.reset(capacity);
+        HuffmanCompress.encodeInterleaved(content, codeTable, streamWriters);
+        int restLength = 1 + Integer.BYTES + codeTable.getStoredLength() + STREAM_COUNT * (1 + Integer.BYTES)
+                - Integer.BYTES; // the length of the last stream is not stored
+        int paddingBits = 0; // padding bits of each stream, one byte each
+        for (BitWriter streamWriter : streamWriters) {
+            paddingBits = paddingBits << Byte.SIZE | streamWriter.finish();
+            restLength += streamWriter.getBytePosition();
+        }
+
+        // 2. writing the block
+        int length = content.remaining();
+        if (out.remaining() < 2 * Integer.BYTES + restLength)
+            throw new BufferOverflowException();
+        out.putInt(length);
+        out.putInt(restLength);
+        out.put((byte) HuffmanBlock.INTERLEAVED_BLOCK);
+        out.putInt(HuffmanBlock.checksum(crc, content, content.position(), length));
+        codeTable.writeTo(out);
+        out.putInt(paddingBits);
+        for (int stream = 0; stream < STREAM_COUNT - 1; stream++)
+            out.putInt(streamWriters[stream].getBytePosition());
+        for (BitWriter streamWriter : streamWriters)
+            streamWriter.writeTo(out);
+        return 2 * Integer.BYTES + restLength;
+    }
+
+    /**
+     * @param length number of bytes of content
+     * @return largest number of bytes compress can write for content of given length
+     */
+    public static int maxCompressedLength(int length) {
+        return length == 0 ? Integer.BYTES : length + BLOCK_OVERHEAD;
+    }
+
+    /**
+     * Sets the length of the binary value of each character from given frequencies,
+     * giving the same lengths as HuffmanCompress.setCodeLengths without allocating
+     *
+     * @param frequencies frequency of each character (frequencyList or tableFrequencies)
+     */
+    private void setCodeLengths(int[] frequencies) {
+        // characters with frequency > 0, sorted by frequency
+        int leafCount = 0;
+        for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++) {
+            if (frequencies[symbol] > 0)
+                leaves[leafCount++] = (long) frequencies[symbol] << 32 | symbol;
+        }
+        Arrays.sort(leaves, 0, leafCount);
+
+        Arrays.fill(lengths, 0);
+        if (leafCount == 1) { // extreme case, a single character still needs 1 bit
+            lengths[(int) leaves[0]] = 1;
+            return;
+        }
+        buildTree(leafCount);
+        if (tree[0] > maxCodeLength) // the lowest frequency leaf is the deepest
+            limitCodeLengths(leafCount);
+        else {
+            for (int i = 0; i < leafCount; i++)
+                lengths[(int) leaves[i]] = (int) tree[i];
+        }
+    }
+
+    /**
+     * Builds the Tree of the sorted leaves inside the tree array (in-place calculation of
+     * Moffat and Katajainen). Like Tree.buildCodeLengths, the two lowest frequency Nodes are taken
+     * from the front of the leaves and of the parents (leaves first on equal frequencies),
+     * so both give the same lengths
+     *
+     * @param leafCount number of sorted leaves (at least 2)
+     */
+    private void buildTree(int leafCount) {
+        for (int i = 0; i < leafCount; i++)
+            tree[i] = leaves[i] >>> 32;
+
+        // 1. parent i takes the place of leaf i, parents that got a parent store its index
+        int leaf = 0, parent = 0; // next leaf and next parent without a parent
+        for (int next = 0; next < leafCount - 1; next++) {
+            for (int child = 0; child < 2; child++) {
+                long frequency;
+                if (leaf >= leafCount || parent < next && tree[parent] < tree[leaf]) {
+                    frequency = tree[parent];
+                    tree[parent++] = next;
+                } else
+                    frequency = tree[leaf++];
+                tree[next] = child == 0 ? frequency : tree[next] + frequency;
+            }
+        }
+
+        // 2. depth of every parent (the last parent is the root)
+        tree[leafCount - 2] = 0;
+        for (int i = leafCount - 3; i >= 0; i--)
+            tree[i] = tree[(int) tree[i]] + 1;
+
+        // 3. depth of every leaf, deepest first: the Nodes of each depth that are not parents are leaves
+        int available = 1, depth = 0;
+        int next = leafCount - 2, leafIndex = leafCount - 1;
+        while (available > 0) {
+            int parents = 0;
+            while (next >= 0 && tree[next] == depth) {
+                parents++;
+                next--;
+            }
+            for (; available > parents; available--)
+                tree[leafIndex--] = depth;
+            available = 2 * parents;
+            depth++;
+        }
+    }
+
+    /**
+     * Sets optimal lengths where no length is above maxCodeLength (package-merge algorithm),
+     * giving the same lengths as Tree.limitCodeLengths in arrays kept between blocks
+     *
+     * @param leafCount number of sorted leaves (at least 2)
+     */
+    private void limitCodeLengths(int leafCount) {
+        if (isLeaf == null) {
+            isLeaf = new boolean[maxCodeLength][2 * CHARACTER_COUNT];
+            levelWeights = new long[2 * CHARACTER_COUNT];
+            mergedWeights = new long[2 * CHARACTER_COUNT];
+        }
+
+        // level maxCodeLength - 1 contains only the leaves
+        long[] weights = levelWeights, merged = mergedWeights;
+        int itemCount = leafCount;
+        for (int i = 0; i < leafCount; i++) {
+            weights[i] = leaves[i] >>> 32;
+            isLeaf[maxCodeLength - 1][i] = true;
+        }
+        for (int level = maxCodeLength - 2; level >= 0; level--) {
+            // merging the leaves with the packages of the previous level (both are sorted)
+            int packageCount = itemCount / 2;
+            int leaf = 0, pack = 0;
+            for (int i = 0; i < leafCount + packageCount; i++) {
+                long packageWeight = pack < packageCount
+                        ? weights[2 * pack] + weights[2 * pack + 1] : Long.MAX_VALUE;
+                isLeaf[level][i] = leaf < leafCount && leaves[leaf] >>> 32 <= packageWeight;
+                if (isLeaf[level][i])
+                    merged[i] = leaves[leaf++] >>> 32;
+                else {
+                    merged[i] = packageWeight;
+                    pack++;
+                }
+            }
+            long[] swap = weights;
+            weights = merged;
+            merged = swap;
+            itemCount = leafCount + packageCount;
+        }
+
+        // taking the cheapest 2n - 2 items, following the packages through every level
+        int taken = 2 * leafCount - 2;
+        for (int level = 0; level < maxCodeLength && taken > 0; level++) {
+            int packages = 0;
+            for (int i = 0, leaf = 0; i < taken; i++) {
+                if (isLeaf[level][i])
+                    lengths[(int) leaves[leaf++]]++; // leaves are taken in frequency order
+                else
+                    packages++;
+            }
+            taken = 2 * packages; // every package is made of 2 items of the next level
+        }
+    }
+
+    /**
+     * Constructor for HuffmanCompressor object (with default maximum code length)
+     */
+    public HuffmanCompressor() {
+        this(HuffmanCompress.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Constructor for HuffmanCompressor object with limited binary value lengths
+     * @param maxCodeLength maximum length of a binary value (at least 8)
+     */
+    public HuffmanCompressor(int maxCodeLength) {
+        this(maxCodeLength, false);
+    }
+
+    /**
+     * Constructor for HuffmanCompressor object with limited binary value lengths
+     * @param maxCodeLength maximum length of a binary value (at least 8,
+     *                      lowered to HuffmanDecoder.TABLE_BITS in interleaved mode)
+     * @param interleaved true to write INTERLEAVED_BLOCKs
+     */
+    public HuffmanCompressor(int maxCodeLength, boolean interleaved) {
+        this(maxCodeLength, interleaved, false);
+    }
+
+    /**
+     * Constructor for HuffmanCompressor object with limited binary value lengths
+     * @param maxCodeLength maximum length of a binary value (at least 8,
+     *                      lowered to HuffmanDecoder.TABLE_BITS in interleaved mode)
+     * @param interleaved true to write INTERLEAVED_BLOCKs
+     * @param reuseTables true to let blocks refer to the CodeTable of the previous block
+     *                    (REPEAT_BLOCKs and DELTA_BLOCKs, not in interleaved mode)
+     */
+    public HuffmanCompressor(int maxCodeLength, boolean interleaved, boolean reuseTables) {
+        if (maxCodeLength < Byte.SIZE || maxCodeLength > CodeTable.MAX_LENGTH)
+            throw new IllegalArgumentException("Maximum code length should be 8 to " + CodeTable.MAX_LENGTH);
+        if (interleaved && reuseTables)
+            throw new IllegalArgumentException("CodeTables are only reused without interleaving");
+        this.maxCodeLength = interleaved ? Math.min(maxCodeLength, HuffmanDecoder.TABLE_BITS) : maxCodeLength;
+        this.interleaved = interleaved;
+        this.reuseTables = reuseTables;
+        this.previousLengths = reuseTables ? new int[CHARACTER_COUNT] : null;
+        this.previousTable = reuseTables ? new CodeTable(CHARACTER_COUNT) : null;
+        this.history = reuseTables ? new int[CHARACTER_COUNT] : null;
+        this.tableFrequencies = reuseTables ? new int[CHARACTER_COUNT] : null;
+        this.otherLengths = reuseTables ? new int[CHARACTER_COUNT] : null;
+        this.otherTable = reuseTables ? new CodeTable(CHARACTER_COUNT) : null;
+        this.streamWriters = interleaved ? new BitWriter[STREAM_COUNT] : null;
+        for (int stream = 0; interleaved && stream < STREAM_COUNT; stream++)
+            streamWriters[stream] = new BitWriter(0);
+    }
+
+    // getter methods
+    public int getMaxCodeLength() { return maxCodeLength; }
+    public boolean isInterleaved() { return interleaved; }
+    public boolean isReusingTables() { return reuseTables; }
+}
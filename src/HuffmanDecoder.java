@@ -0,0 +1,299 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * HuffmanDecoder object decodes packed encodedBytes using precomputed lookup tables.
+ * Up to TABLE_BITS bits are resolved with a single lookup, longer binary values
+ * are resolved by searching the binary values of each longer length.
+ * The tables can be rebuilt for another CodeTable (see setCodeTable), reusing their arrays
+ */
+public class HuffmanDecoder {
+    // static attributes
+    // maximum number of bits resolved by a single lookup (table of 16 KB, fits in L1 cache)
+    public static final int TABLE_BITS = 12;
+    // number of bits used by the length part of a table entry
+    private static final int LENGTH_BITS = 6;
+
+    // instance attributes
+    // number of bits resolved by lookupTable
+    private int tableBits;
+    // lookupTable entries: character << LENGTH_BITS | length (0 -> binary value is longer)
+    private int[] lookupTable;
+    // length of the longest binary value
+    private int maxLength;
+    // binary values longer than tableBits (index -> length), sorted in ascending order
+    private long[][] longValues;
+    // characters of longValues (in the same order)
+    private int[][] longCharacters;
+    // number of binary values of each length in longValues (the arrays may be longer)
+    private int[] longCounts;
+    // true if the longValues of a length are consecutive (always the case for canonical binary values)
+    private boolean[] consecutive;
+    // BitReaders of the streams of an interleaved block (created with the first one)
+    private BitReader[] streamReaders;
+
+    /**
+     * Used to decode the next character from the given BitReader
+     * @param reader BitReader positioned at the start of a binary value
+     * @return decoded character
+     */
+    public int decodeSymbol(BitReader reader) {
+        int entry = lookupTable[(int) reader.peekBits(tableBits)];
+        if (entry != 0) { // binary value resolved by lookupTable
+            reader.skipBits(entry & ((1 << LENGTH_BITS) - 1));
+            return entry >>> LENGTH_BITS;
+        }
+        // binary value is longer than tableBits, checking each longer length
+        for (int length = tableBits + 1; length <= maxLength; length++) {
+            int count = longCounts[length];
+            long[] values = longValues[length];
+            long value = reader.peekBits(length);
+            if (count == 0 || value < values[0] || value > values[count - 1])
+                continue; // no binary value of this length can match
+            int index = consecutive[length] ? (int) (value - values[0]) : Arrays.binarySearch(values, 0, count, value);
+            if (index >= 0) { // binary value found
+                reader.skipBits(length);
+                return longCharacters[length][index];
+            }
+        } throw new IllegalArgumentException("invalid binary value in given file");
+    }
+
+    /**
+     * Used to decode a known number of characters into given buffer (heap or memory mapped)
+     *
+     * @param reader BitReader positioned at the first binary value
+     * @param output buffer to store the decoded characters in (its position is not used)
+     * @param offset index of the first decoded character in output
+     * @param length number of characters to decode
+     */
+    public void decode(BitReader reader, ByteBuffer output, int offset, int length) {
+        for (int i = offset; i < offset + length; i++)
+            output.put(i, (byte) decodeSymbol(reader));
+    }
+
+    /**
+     * Used to decode a known number of characters spread over the streams of an interleaved block
+     * (character i is in stream i % STREAM_COUNT, see HuffmanBlock.INTERLEAVED_BLOCK).
+     * When every binary value is resolved by lookupTable, the streams are decoded in the same loop:
+     * 8 bytes are read from each stream and 4 characters decoded from each, so the lookups
+     * of one stream do not wait on the lengths decoded from the others.
+     * The last characters (and longer binary values) are decoded one at a time
+     *
+     * @param in buffer holding the streams (heap or memory mapped, not moved)
+     * @param streamStarts index of the first byte of each stream, then the index after the last stream
+     * @param output buffer to store the decoded characters in (its position is not used)
+     * @param offset index of the first decoded character in output
+     * @param length number of characters to decode
+     * @param decodedBits number of bits decoded from each stream (set by this method)
+     */
+    public void decodeInterleaved(ByteBuffer in, int[] streamStarts, ByteBuffer output, int offset,
+                                  int length, long[] decodedBits) {
+        int streams = HuffmanBlock.STREAM_COUNT;
+        int p0 = streamStarts[0], p1 = streamStarts[1], p2 = streamStarts[2], p3 = streamStarts[3];
+        int c0 = 0, c1 = 0, c2 = 0, c3 = 0; // bits of each stream consumed past its byte position
+        int i = offset, end = offset + length;
+
+        // 1. 4 characters of each stream per round (after at most 7 bits consumed and 3 binary values
+        //    of at most TABLE_BITS bits, the 8 bytes read still hold a full lookup)
+        if (maxLength <= tableBits && in.order() == ByteOrder.BIG_ENDIAN && output.order() == ByteOrder.BIG_ENDIAN) {
+            int[] table = lookupTable;
+            int shift = Long.SIZE - tableBits;
+            int lengthMask = (1 << LENGTH_BITS) - 1;
+            int last0 = streamStarts[1] - Long.BYTES, last1 = streamStarts[2] - Long.BYTES;
+            int last2 = streamStarts[3] - Long.BYTES, last3 = streamStarts[4] - Long.BYTES;
+            int lastRound = end - 4 * streams;
+            while (i <= lastRound && p0 <= last0 && p1 <= last1 && p2 <= last2 && p3 <= last3) {
+                long w0 = in.getLong(p0) << c0, w1 = in.getLong(p1) << c1;
+                long w2 = in.getLong(p2) << c2, w3 = in.getLong(p3) << c3;
+                for (int k = 0; k < 4; k++, i += streams) {
+                    int e0 = table[(int) (w0 >>> shift)], e1 = table[(int) (w1 >>> shift)];
+                    int e2 = table[(int) (w2 >>> shift)], e3 = table[(int) (w3 >>> shift)];
+                    int l0 = e0 & lengthMask, l1 = e1 & lengthMask, l2 = e2 & lengthMask, l3 = e3 & lengthMask;
+                    w0 <<= l0;
+                    w1 <<= l1;
+                    w2 <<= l2;
+                    w3 <<= l3;
+                    c0 += l0;
+                    c1 += l1;
+                    c2 += l2;
+                    c3 += l3;
+                    // characters i to i + 3 (one of each stream) written at once, big-endian
+                    output.putInt(i, (e0 >>> LENGTH_BITS) << 24 | (e1 >>> LENGTH_BITS) << 16
+                            | (e2 >>> LENGTH_BITS) << 8 | e3 >>> LENGTH_BITS);
+                }
+                p0 += c0 >>> 3;
+                p1 += c1 >>> 3;
+                p2 += c2 >>> 3;
+                p3 += c3 >>> 3;
+                c0 &= 7;
+                c1 &= 7;
+                c2 &= 7;
+                c3 &= 7;
+            }
+        }
+
+        // 2. remaining characters, one at a time from where each stream was left
+        if (streamReaders == null) {
+            streamReaders = new BitReader[streams];
+            for (int k = 0; k < streams; k++)
+                streamReaders[k] = new BitReader(new byte[0]);
+        }
+        resetStream(streamReaders[0], in, p0, c0, streamStarts[1]);
+        resetStream(streamReaders[1], in, p1, c1, streamStarts[2]);
+        resetStream(streamReaders[2], in, p2, c2, streamStarts[3]);
+        resetStream(streamReaders[3], in, p3, c3, streamStarts[4]);
+        for (int stream = (i - offset) % streams; i < end; i++) {
+            output.put(i, (byte) decodeSymbol(streamReaders[stream]));
+            if (++stream == streams)
+                stream = 0;
+        }
+
+        decodedBits[0] = (long) (p0 - streamStarts[0]) * Byte.SIZE + streamReaders[0].getBitPosition();
+        decodedBits[1] = (long) (p1 - streamStarts[1]) * Byte.SIZE + streamReaders[1].getBitPosition();
+        decodedBits[2] = (long) (p2 - streamStarts[2]) * Byte.SIZE + streamReaders[2].getBitPosition();
+        decodedBits[3] = (long) (p3 - streamStarts[3]) * Byte.SIZE + streamReaders[3].getBitPosition();
+    }
+
+    /**
+     * Positions a stream's BitReader at given bit
+     *
+     * @param reader BitReader of the stream
+     * @param in buffer holding the stream
+     * @param position index of the byte holding the bit
+     * @param consumed number of bits of that byte already decoded
+     * @param end index after the last byte of the stream
+     */
+    private static void resetStream(BitReader reader, ByteBuffer in, int position, int consumed, int end) {
+        reader.reset(in, position, end);
+        if (consumed > 0)
+            reader.readBits(consumed);
+    }
+
+    /**
+     * Used to decode given encodedBytes into the original bytes
+     *
+     * @param encodedBytes encodedBytes to decode
+     * @param bitLength number of meaningful bits in encodedBytes
+     * @return decoded bytes
+     */
+    public byte[] decode(byte[] encodedBytes, long bitLength) {
+        BitReader reader = new BitReader(encodedBytes);
+        ByteArrayOutputStream buildContent = new ByteArrayOutputStream(encodedBytes.length * 2);
+
+        while (reader.getBitPosition() < bitLength) {
+            int character = decodeSymbol(reader);
+            // incomplete binary value at the end is not decoded
+            if (reader.getBitPosition() > bitLength)
+                break;
+            buildContent.write(character);
+        } return buildContent.toByteArray();
+    }
+
+    /**
+     * Constructor for HuffmanDecoder object
+     * @param codeTable characters and their binary values
+     */
+    public HuffmanDecoder(CodeTable codeTable) {
+        setCodeTable(codeTable);
+    }
+
+    /**
+     * Used to rebuild the lookup tables for another CodeTable. Arrays that are already
+     * large enough are reused, so a reused HuffmanDecoder stops allocating once it has seen
+     * its largest CodeTable (see HuffmanDecompressor)
+     *
+     * @param codeTable characters and their binary values
+     */
+    public void setCodeTable(CodeTable codeTable) {
+        int longest = Math.max(1, codeTable.getMaxLength());
+        if (longest > CodeTable.MAX_LENGTH)
+            throw new IllegalArgumentException("binary value longer than " + CodeTable.MAX_LENGTH + " bits");
+
+        maxLength = longest;
+        tableBits = Math.min(maxLength, TABLE_BITS);
+        if (lookupTable == null || lookupTable.length < 1 << tableBits)
+            lookupTable = new int[1 << tableBits];
+        else
+            Arrays.fill(lookupTable, 0, 1 << tableBits, 0);
+        if (longValues == null || longValues.length <= maxLength) {
+            longValues = new long[maxLength + 1][];
+            longCharacters = new int[maxLength + 1][];
+            longCounts = new int[maxLength + 1];
+            consecutive = new boolean[maxLength + 1];
+        }
+
+        // counting binary values of each longer length
+        Arrays.fill(longCounts, 0);
+        for (int symbol = 0; symbol < codeTable.getSymbolCount(); symbol++) {
+            if (codeTable.getLength(symbol) > tableBits)
+                longCounts[codeTable.getLength(symbol)]++;
+        }
+        for (int length = tableBits + 1; length <= maxLength; length++) {
+            int count = longCounts[length];
+            if (count > 0 && (longValues[length] == null || longValues[length].length < count)) {
+                longValues[length] = new long[count];
+                longCharacters[length] = new int[count];
+            }
+            longCounts[length] = 0; // counted again while filling longValues
+        }
+
+        for (int symbol = 0; symbol < codeTable.getSymbolCount(); symbol++) {
+            int length = codeTable.getLength(symbol);
+            long value = codeTable.getCode(symbol);
+
+            if (length == 0) // character has no binary value
+                continue;
+            if (length <= tableBits) {
+                // every table index starting with the binary value refers to the character
+                int first = (int) value << (tableBits - length);
+                int last = first + (1 << (tableBits - length));
+                Arrays.fill(lookupTable, first, last, symbol << LENGTH_BITS | length);
+            } else {
+                int index = longCounts[length]++;
+                longValues[length][index] = value;
+                longCharacters[length][index] = symbol;
+            }
+        }
+
+        // sorting longValues (along with their characters) for binary search
+        for (int length = tableBits + 1; length <= maxLength; length++) {
+            int count = longCounts[length];
+            if (count > 0) {
+                long[] values = longValues[length];
+                sortValues(values, longCharacters[length], count);
+                consecutive[length] = values[count - 1] - values[0] == count - 1;
+            }
+        }
+    }
+
+    /**
+     * Sorts the first binary values of given array in ascending order, keeping characters aligned
+     * @param values binary values to sort
+     * @param characters characters of the binary values
+     * @param count number of binary values to sort
+     */
+    private static void sortValues(long[] values, int[] characters, int count) {
+        // canonical binary values are already in ascending order (large alphabets have
+        // most of their binary values here, so sorting them again would be wasted)
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++)
+            sorted = values[i - 1] < values[i];
+        if (sorted)
+            return;
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> values[i]));
+        long[] unsortedValues = Arrays.copyOf(values, count);
+        int[] unsortedCharacters = Arrays.copyOf(characters, count);
+        for (int i = 0; i < order.length; i++) {
+            values[i] = unsortedValues[order[i]];
+            characters[i] = unsortedCharacters[order[i]];
+        }
+    }
+}
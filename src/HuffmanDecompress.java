@@ -1,6 +1,15 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
 /**
@@ -10,6 +19,8 @@ public class HuffmanDecompress {
     // static attribute
     // encodedString retrieved from file to decompress
     private static String encodedString;
+    // number of 0s added to the end of encodedBytes (read from the list file)
+    private static int removeCount;
 
     /**
      * Used to decompress Text Files
@@ -21,28 +32,228 @@ public class HuffmanDecompress {
                 (HuffmanCompress.getCustomPath(initFile, "_decoded"));
         System.out.println("\nDECOMPRESSING...\n");
 
+        if (HuffmanBlock.isBlockFile(initFile)) { // file compressed in block mode
+            decompressBlockFile(initFile, decompressedFile);
+            System.out.println("Compressed file stored in " + decompressedFile.getFilePath());
+            return;
+        }
+        if (HuffmanAdaptiveInputStream.isAdaptiveFile(initFile)) { // file compressed in adaptive mode
+            try (InputStream in = new FileInputStream(initFile.getFilePath());
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(decompressedFile.getFilePath()))) {
+                decompressAdaptive(in, out);
+            } catch (IOException e) { // handling exceptions
+                System.err.println("Can not read from the file");
+            }
+            System.out.println("Compressed file stored in " + decompressedFile.getFilePath());
+            return;
+        }
+        if (WordModel.isWordFile(initFile)) { // file compressed in word mode
+            try {
+                decompressedFile.writeBinaryFile(decompressWords
+                        (initFile.mapFile(0, initFile.getFileLength())));
+            } catch (IOException e) { // handling exceptions
+                System.err.println("Can not read from the file");
+            }
+            System.out.println("Compressed file stored in " + decompressedFile.getFilePath());
+            return;
+        }
+
         // encodedBytes retrieved from the initFile
         byte[] encodedBytes = initFile.readBinaryFile();
-        // encodedBytes converted to encodedStrings
-        encodedString = convertToString(encodedBytes);
 
-        // getting binaryValueList from initFile + _list path
+        // getting binaryValueList (and removeCount) from initFile + _list path
         ArrayList<Node> binaryValueList = getBinaryValueList(initFile); // getting binaryValueList
-        // finding the maximum frequency in binaryValueList
-        int maxFrequency = getMaxFrequency(binaryValueList); // getting maxFrequency
-
-        // sorting binaryValueList in ascending frequency order
-        ArrayList<ArrayList<Node>> sortedValueList = sortBinaryValueList(binaryValueList);
+        // building the lookup tables based on binaryValueList
+        HuffmanDecoder decoder = new HuffmanDecoder(CodeTable.fromNodeList
+                (binaryValueList, HuffmanCompress.CHARACTER_COUNT));
 
-        // decoding encodedString into readable text (decompressedText)
-        String decompressedText = decompressBinaryToText(encodedString, sortedValueList, maxFrequency);
-        // writing decompressed text to given textFile
-        decompressedFile.writeFile(decompressedText, true);
+        // decoding encodedBytes back into the original bytes
+        // extra 0s added during compression are excluded from the decoded bits
+        long bitLength = (long) encodedBytes.length * Byte.SIZE - removeCount;
+        byte[] decompressedBytes = decoder.decode(encodedBytes, bitLength);
+        // writing decompressed bytes to given textFile (no charset conversion)
+        decompressedFile.writeBinaryFile(decompressedBytes);
 
         // Additional info
         System.out.println("Compressed file stored in " + decompressedFile.getFilePath());
     }
 
+    /**
+     * Used to decompress a file compressed in block mode (a compressed stream).
+     * Blocks are found through the BlockIndex and decompressed in parallel,
+     * the header is checked first and the blocks should add up to the original length
+     *
+     * @param initFile textFile to decompress
+     * @param decompressedFile textFile to write the decompressed bytes into
+     */
+    public static void decompressBlockFile(TextFile initFile, TextFile decompressedFile) {
+        try (FileChannel in = FileChannel.open(Paths.get(initFile.getFilePath()), StandardOpenOption.READ)) {
+            long originalLength = HuffmanBlock.readHeader(new DataInputStream(Channels.newInputStream(in)));
+            BlockIndex index = BlockIndex.readFrom(in);
+            if (index != null) {
+                if (originalLength >= 0 && index.getTotalRawLength() != originalLength)
+                    throw new IOException("invalid block index in given file");
+                decompressBlocks(initFile, index, decompressedFile, ForkJoinPool.commonPool());
+                return;
+            }
+            // without an index, blocks are decoded one at a time
+            try (OutputStream out = new FileOutputStream(decompressedFile.getFilePath())) {
+                InputStream blockStream = new HuffmanDecompressInputStream
+                        (new BufferedInputStream(Channels.newInputStream(in.position(0))));
+                blockStream.transferTo(out);
+            }
+
+        } catch (IOException | UncheckedIOException e) { // handling exceptions
+            System.err.println("Can not read from the file");
+        }
+    }
+
+    /**
+     * Used to print part of a file compressed in block mode,
+     * decoding only the blocks holding it (see HuffmanSeekableFile)
+     *
+     * @param initFile textFile compressed in block mode
+     * @param offset offset of the first byte to print in the uncompressed content
+     * @param length number of bytes to print
+     */
+    public static void decompressRange(TextFile initFile, long offset, int length) {
+        try (HuffmanSeekableFile seekableFile = new HuffmanSeekableFile(initFile)) {
+            byte[] content = seekableFile.read(offset, length);
+            System.out.write(content, 0, content.length);
+            System.out.flush();
+        } catch (IOException e) { // handling exceptions
+            System.err.println("Can not read from the file");
+        } catch (IllegalArgumentException e) { // range outside the uncompressed content
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Used to print the offset and line of every occurrence of a pattern in a file
+     * compressed in block mode, decoding only the blocks that may hold it (see CompressedSearch)
+     *
+     * @param initFile textFile compressed in block mode
+     * @param pattern pattern to find (searched as its UTF-8 bytes)
+     */
+    public static void searchFile(TextFile initFile, String pattern) {
+        try (HuffmanSeekableFile seekableFile = new HuffmanSeekableFile(initFile)) {
+            CompressedSearch search = new CompressedSearch(pattern.getBytes(StandardCharsets.UTF_8));
+            for (long offset : search.search(seekableFile)) {
+                String line = new String(seekableFile.readLine(offset), StandardCharsets.UTF_8);
+                System.out.println(offset + ": " + line);
+            }
+            System.out.println(search.getDecodedBlocks() + " block decodes for "
+                    + seekableFile.getBlockCount() + " blocks");
+        } catch (IOException e) { // handling exceptions
+            System.err.println("Can not read from the file");
+        }
+    }
+
+    /**
+     * Used to decompress a stream compressed in adaptive mode (see HuffmanCompress.compressAdaptive).
+     * Decompressed bytes are written (and flushed) as soon as they can be decoded
+     *
+     * @param in stream to decompress
+     * @param out stream to write the decompressed bytes into (not closed)
+     * @throws IOException if a stream can not be read or written, or is not in the expected format
+     */
+    public static void decompressAdaptive(InputStream in, OutputStream out) throws IOException {
+        InputStream adaptiveIn = new HuffmanAdaptiveInputStream(in);
+        byte[] buffer = new byte[8 * 1024];
+        for (int read = adaptiveIn.read(buffer); read >= 0; read = adaptiveIn.read(buffer)) {
+            out.write(buffer, 0, read);
+            out.flush();
+        }
+    }
+
+    /**
+     * Used to decompress content compressed in word mode (see HuffmanCompress.compressWords).
+     * Each binary value is decoded into a whole token
+     *
+     * @param in compressed content, from its position to its limit (moved to its limit)
+     * @return decompressed bytes
+     * @throws IOException if the content is not in the expected format or fails the checksum
+     */
+    public static byte[] decompressWords(ByteBuffer in) throws IOException {
+        // 1. getting the header and the vocabulary
+        if (in.remaining() < Integer.BYTES + Long.BYTES || in.getInt() != WordModel.WORD_MAGIC)
+            throw new IOException("given file is not compressed in word mode");
+        long length = in.getLong();
+        if (length < 0 || length > Integer.MAX_VALUE)
+            throw new IOException("invalid length in given file");
+        WordModel model = WordModel.readFrom(in);
+        if (in.remaining() < 2 * Integer.BYTES + 1)
+            throw new IOException("invalid payload in given file");
+        int tokenCount = in.getInt();
+        int checksum = in.getInt();
+        int extra0s = in.get() & 0xFF;
+        if (tokenCount < 0 || tokenCount > length || extra0s >= Byte.SIZE)
+            throw new IOException("invalid payload in given file");
+
+        // 2. decoding the tokens, every bit except the extra 0s should be decoded
+        byte[] decompressedBytes = new byte[(int) length];
+        long payloadBits = (long) in.remaining() * Byte.SIZE - extra0s;
+        BitReader reader = new BitReader(in);
+        model.decode(reader, tokenCount, decompressedBytes);
+        if (reader.getBitPosition() != payloadBits
+                || HuffmanBlock.checksum(ByteBuffer.wrap(decompressedBytes)) != checksum)
+            throw new IOException("Compressed file is corrupted (checksum mismatch)");
+        in.position(in.limit());
+        return decompressedBytes;
+    }
+
+    /**
+     * Used to decompress every block listed in given index in parallel.
+     * Both files are memory mapped one window (of whole blocks) at a time:
+     * each block is decoded from the mapped compressed file straight into
+     * its final position in the mapped decompressed file
+     *
+     * @param initFile compressed file
+     * @param index index of the blocks in the compressed file
+     * @param decompressedFile textFile to write the decompressed bytes into
+     * @param pool pool to decompress the blocks on
+     * @throws IOException if a file can not be read or written
+     */
+    public static void decompressBlocks(TextFile initFile, BlockIndex index, TextFile decompressedFile,
+                                        ForkJoinPool pool) throws IOException {
+        // output gets its final length first, windows are then written in place
+        decompressedFile.setFileLength(index.getTotalRawLength());
+
+        int last;
+        for (int first = 0; first < index.getBlockCount(); first = last) {
+            // grouping blocks into a window of at most MAP_WINDOW decompressed bytes (at least 1 block)
+            long rawStart = index.getRawOffset(first);
+            last = first + 1;
+            while (last < index.getBlockCount()
+                    && index.getRawOffset(last) + index.getRawLength(last) - rawStart <= TextFile.MAP_WINDOW)
+                last++;
+            long start = index.getOffset(first);
+            ByteBuffer input = initFile.mapFile
+                    (start, index.getOffset(last - 1) + index.getCompressedLength(last - 1) - start);
+            ByteBuffer output = decompressedFile.mapFileForWrite
+                    (rawStart, index.getRawOffset(last - 1) + index.getRawLength(last - 1) - rawStart);
+
+            ArrayList<ForkJoinTask<?>> blockTasks = new ArrayList<>();
+            for (int i = first; i < last; i++) {
+                int block = i;
+                blockTasks.add(pool.submit(() -> {
+                    try {
+                        ByteBuffer blockBytes = input.slice
+                                ((int) (index.getOffset(block) - start), index.getCompressedLength(block));
+                        ByteBuffer rawBytes = output.slice
+                                ((int) (index.getRawOffset(block) - rawStart), index.getRawLength(block));
+                        if (HuffmanBlock.decodeBlock(blockBytes, rawBytes, 0) != rawBytes.limit())
+                            throw new IOException("invalid block index in given file");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> blockTask : blockTasks)
+                blockTask.join(); // waiting for every block of the window
+        }
+    }
+
     /**
      * Given encodedBytes are converted into encodedString
      * @param encodedBytes given encodedBytes
@@ -71,9 +282,11 @@ public class HuffmanDecompress {
         String[] list = listString.split("\n");
 
         // assigning the removeCount (last element of listFile)
-        int removeCount = Integer.parseInt(list[list.length - 1]);
+        removeCount = Integer.parseInt(list[list.length - 1]);
         // removing the extra0s from encodedString (added during compression when decoding into binary)
-        encodedString = encodedString.substring(0, encodedString.length() - removeCount);
+        // encodedString is only set if encodedBytes were converted using convertToString
+        if (encodedString != null)
+            encodedString = encodedString.substring(0, encodedString.length() - removeCount);
 
         char charValue;
         for (int i = 1; i < list.length - 1; i += 2) { // looping through listString
@@ -255,6 +468,14 @@ public class HuffmanDecompress {
         // checks if filePath ends with ".txt"
         if (filePath.endsWith(".txt")) {
             TextFile fileToDecompress = new TextFile(filePath);
+            if (args.length > 1 && args[0].equals("search")) { // printing the lines holding a pattern
+                searchFile(fileToDecompress, args[1]);
+                return;
+            }
+            if (args.length > 1) { // printing only the given range (offset, length) of a block mode file
+                decompressRange(fileToDecompress, Long.parseLong(args[0]), Integer.parseInt(args[1]));
+                return;
+            }
             // decompressText
             decompressTextFile(fileToDecompress);
             UILikeness(fileToDecompress);
@@ -0,0 +1,152 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Input stream decompressing content written by HuffmanCompressOutputStream.
+ * Blocks are read and decoded one at a time, so only a single block
+ * is kept in memory
+ */
+public class HuffmanDecompressInputStream extends InputStream {
+    // static attributes
+    // number of bytes restBytes first grows by when a block does not fit (it grows as bytes arrive,
+    // so a corrupt rest length fails at the end of the stream instead of allocating it)
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // instance attributes
+    // stream the compressed blocks are read from
+    private final DataInputStream in;
+    // decoded bytes of the current block
+    private byte[] block = new byte[0];
+    // number of decoded bytes in the current block
+    private int blockLength;
+    // index of the next byte to return from the current block
+    private int blockPosition;
+    // rest of the current block after its lengths (reused between blocks)
+    private byte[] restBytes = new byte[0];
+    // HuffmanDecompressor reused for every block
+    private final HuffmanDecompressor decompressor = new HuffmanDecompressor();
+    // original length stored in the header (-1 if not known)
+    private final long originalLength;
+    // number of bytes decoded so far
+    private long decodedLength;
+    // true once the end of the stream is reached
+    private boolean ended;
+
+    /**
+     * Used to read a single byte
+     * @return read byte (0 to 255), -1 at the end of the stream
+     * @throws IOException if the stream can not be read
+     */
+    @Override
+    public int read() throws IOException {
+        if (blockPosition == blockLength && !readBlock())
+            return -1;
+        return block[blockPosition++] & 0xFF;
+    }
+
+    /**
+     * Used to read into part of a byte array
+     *
+     * @param bytes array to read into
+     * @param offset index of the first byte to fill
+     * @param length maximum number of bytes to read
+     * @return number of bytes read, -1 at the end of the stream
+     * @throws IOException if the stream can not be read
+     */
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (blockPosition == blockLength && !readBlock())
+            return -1;
+
+        int copied = Math.min(length, blockLength - blockPosition);
+        System.arraycopy(block, blockPosition, bytes, offset, copied);
+        blockPosition += copied;
+        return copied;
+    }
+
+    /**
+     * @return number of decoded bytes that can be read without reading the next block
+     */
+    @Override
+    public int available() {
+        return blockLength - blockPosition;
+    }
+
+    /**
+     * Used to close the underlying stream
+     * @throws IOException if the stream can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads and decodes the next block
+     * @return true if a block was read, false at the end of the stream
+     * @throws IOException if the stream can not be read or is not in the expected format
+     */
+    private boolean readBlock() throws IOException {
+        if (ended)
+            return false;
+        int rawLength = in.readInt();
+        if (rawLength == 0) { // end of the stream
+            BlockIndex.skipIndex(in); // index is only needed for random access
+            if (originalLength >= 0 && decodedLength != originalLength)
+                throw new IOException("Compressed stream is truncated");
+            ended = true;
+            return false;
+        }
+
+        // reading the rest of the block (codeTable, checksum and payload)
+        int restLength = in.readInt();
+        if (rawLength < 0 || restLength < 0 || originalLength >= 0 && rawLength > originalLength - decodedLength)
+            throw new IOException("invalid block in given stream");
+        readRest(restLength);
+
+        // decoding the block (every binary value takes at least 1 bit,
+        // an LZ77 match decodes to at most MAX_MATCH bytes)
+        int expansion = restLength > 0 && restBytes[0] == HuffmanBlock.LZ_BLOCK ? MatchFinder.MAX_MATCH : 1;
+        if (rawLength > (long) restLength * Byte.SIZE * expansion)
+            throw new IOException("invalid block in given stream");
+        if (block.length < rawLength)
+            block = new byte[rawLength];
+        decompressor.decodeRest(ByteBuffer.wrap(restBytes, 0, restLength), rawLength, ByteBuffer.wrap(block), 0);
+        decodedLength += rawLength;
+        blockLength = rawLength;
+        blockPosition = 0;
+        return true;
+    }
+
+    /**
+     * Reads the rest of a block into restBytes, growing it as the bytes arrive
+     * @param restLength number of bytes to read
+     * @throws IOException if the stream can not be read or ends before the rest of the block
+     */
+    private void readRest(int restLength) throws IOException {
+        for (int read = 0; read < restLength; ) {
+            if (read == restBytes.length)
+                restBytes = Arrays.copyOf(restBytes, (int) Math.min(restLength, Math.max(2L * read, CHUNK_SIZE)));
+            int count = in.read(restBytes, read, Math.min(restLength, restBytes.length) - read);
+            if (count < 0)
+                throw new IOException("invalid block in given stream");
+            read += count;
+        }
+    }
+
+    /**
+     * Constructor for HuffmanDecompressInputStream object
+     * @param in stream to read the compressed content from
+     * @throws IOException if the stream can not be read or is not a compressed stream
+     */
+    public HuffmanDecompressInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        this.originalLength = HuffmanBlock.readHeader(this.in);
+    }
+}
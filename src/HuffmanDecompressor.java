@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+
+/**
+ * HuffmanDecompressor object decompresses blocks (see HuffmanBlock), keeping its lengths,
+ * CodeTable, HuffmanDecoder and BitReader between calls.
+ * HUFFMAN_BLOCKs and INTERLEAVED_BLOCKs (written by HuffmanCompressor or in block mode) are decoded
+ * without allocating once the HuffmanDecoder has seen its largest CodeTable, STORED_BLOCKs are copied,
+ * other block types are decoded by HuffmanBlock.decodeRest. Like HuffmanCompressor, it is only used by one thread at a time.
+ * The CodeTable and HuffmanDecoder of the last block are kept: REPEAT_BLOCKs decode with them as they are
+ * (no table is built), DELTA_BLOCKs change the lengths of a few characters, so such blocks are given in order
+ */
+public class HuffmanDecompressor {
+    // static attributes
+    // number of possible characters
+    private static final int CHARACTER_COUNT = HuffmanCompress.CHARACTER_COUNT;
+    // number of bitstreams of an INTERLEAVED_BLOCK
+    private static final int STREAM_COUNT = HuffmanBlock.STREAM_COUNT;
+
+    // instance attributes
+    // length of the binary value of each character of the current block
+    private final int[] lengths = new int[CHARACTER_COUNT];
+    // work array of CodeTable.setCanonicalCodes
+    private final long[] nextCode = new long[CodeTable.MAX_LENGTH + 1];
+    // codeTable of the current block
+    private final CodeTable codeTable = new CodeTable(CHARACTER_COUNT);
+    // decoder of codeTable (created with the first block)
+    private HuffmanDecoder decoder;
+    // true if codeTable and decoder hold the CodeTable of the previous block
+    private boolean hasTable;
+    // BitReader reused for the payload of every block
+    private final BitReader reader = new BitReader(new byte[0]);
+    // first byte of each stream of an INTERLEAVED_BLOCK (then the end of the block),
+    // and the number of bits decoded from each stream
+    private final int[] streamStarts = new int[STREAM_COUNT + 1];
+    private final long[] decodedBits = new long[STREAM_COUNT];
+    // CRC32 reused for the checksum of every block
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Used to decompress one block (as written by HuffmanCompressor.compress) into given buffer
+     *
+     * @param compressed buffer holding the block at its position (big-endian, moved past the block)
+     * @param out buffer to write the decompressed bytes into (moved past them)
+     * @return number of decompressed bytes (0 for a raw length of 0)
+     * @throws IOException if the block is not in the expected format or fails the checksum
+     * @throws BufferOverflowException if out has less bytes remaining than the block decompresses to
+     *         (nothing is read or written, see getRawLength)
+     */
+    public int decompress(ByteBuffer compressed, ByteBuffer out) throws IOException {
+        int rawLength = getRawLength(compressed);
+        int start = compressed.position();
+        if (rawLength == 0) { // empty content (or the end of a compressed file)
+            compressed.position(start + Integer.BYTES);
+            return 0;
+        }
+        if (compressed.remaining() < 2 * Integer.BYTES)
+            throw new IOException("invalid block in given file");
+        int restLength = compressed.getInt(start + Integer.BYTES);
+        if (restLength < 0 || restLength > compressed.remaining() - 2 * Integer.BYTES)
+            throw new IOException("invalid block in given file");
+        if (rawLength > out.remaining())
+            throw new BufferOverflowException();
+
+        int restStart = start + 2 * Integer.BYTES;
+        decodeRest(compressed, restStart, restStart + restLength, rawLength, out, out.position());
+        compressed.position(restStart + restLength);
+        out.position(out.position() + rawLength);
+        return rawLength;
+    }
+
+    /**
+     * @param compressed buffer holding a block at its position (not moved)
+     * @return number of bytes the block decompresses to
+     * @throws IOException if the buffer does not start with a valid raw length
+     */
+    public static int getRawLength(ByteBuffer compressed) throws IOException {
+        int rawLength = compressed.remaining() < Integer.BYTES ? -1 : compressed.getInt(compressed.position());
+        if (rawLength < 0)
+            throw new IOException("invalid block in given file");
+        return rawLength;
+    }
+
+    /**
+     * Used to decode the rest of a block (everything after its raw length and rest length)
+     * and to check the decoded bytes against the stored checksum (see HuffmanBlock.decodeRest)
+     *
+     * @param restBytes rest of the block, from its position to its limit (heap or memory mapped, not moved)
+     * @param rawLength number of bytes to decode
+     * @param output buffer to store the decoded bytes in (its position is not used)
+     * @param offset index of the first decoded byte in output
+     * @throws IOException if the block is not in the expected format or fails the checksum
+     */
+    public void decodeRest(ByteBuffer restBytes, int rawLength, ByteBuffer output, int offset)
+            throws IOException {
+        decodeRest(restBytes, restBytes.position(), restBytes.limit(), rawLength, output, offset);
+    }
+
+    /**
+     * Decodes the rest of a block held in part of given buffer
+     *
+     * @param in buffer holding the rest of the block (not moved)
+     * @param start index of the first byte of the rest of the block
+     * @param end index after the last byte of the block
+     * @param rawLength number of bytes to decode
+     * @param output buffer to store the decoded bytes in (its position is not used)
+     * @param offset index of the first decoded byte in output
+     * @throws IOException if the block is not in the expected format or fails the checksum
+     */
+    private void decodeRest(ByteBuffer in, int start, int end, int rawLength,
+                            ByteBuffer output, int offset) throws IOException {
+        if (end - start < 1)
+            throw new IOException("invalid block in given file");
+        int blockType = in.get(start) & 0xFF;
+        if (blockType == HuffmanBlock.STORED_BLOCK) {
+            copyStored(in, start + 1, end, rawLength, output, offset);
+            return;
+        }
+        if (blockType != HuffmanBlock.HUFFMAN_BLOCK && blockType != HuffmanBlock.INTERLEAVED_BLOCK
+                && blockType != HuffmanBlock.REPEAT_BLOCK && blockType != HuffmanBlock.DELTA_BLOCK) {
+            // models of other block types are allocated
+            HuffmanBlock.decodeRest(in.slice(start, end - start), rawLength, output, offset);
+            return;
+        }
+
+        // 1. reading the checksum and the codeTable of the block (a REPEAT_BLOCK keeps the previous one)
+        int position = start + 1;
+        if (end - position < Integer.BYTES + 1)
+            throw new IOException("invalid block in given file");
+        int checksum = in.getInt(position);
+        position += Integer.BYTES;
+        if (blockType != HuffmanBlock.REPEAT_BLOCK)
+            position = readCodeTable(in, position, end, blockType == HuffmanBlock.DELTA_BLOCK);
+        else if (!hasTable)
+            throw new IOException("Block refers to the code table of a previous block (blocks are decoded in order)");
+        if (rawLength <= 0 || output.limit() - offset < rawLength)
+            throw new IOException("invalid block in given file");
+
+        // 2. decoding the payload (it takes the rest of the block), every bit except
+        //    the padding should be decoded, and the checksum should match
+        boolean decoded;
+        try {
+            decoded = blockType == HuffmanBlock.INTERLEAVED_BLOCK
+                    ? decodeStreams(in, position, end, rawLength, output, offset)
+                    : decodePayload(in, position, end, rawLength, output, offset);
+        } catch (IllegalArgumentException e) { // binary value not in the codeTable
+            throw new IOException("Compressed file is corrupted (invalid binary value)");
+        }
+        if (!decoded || HuffmanBlock.checksum(crc, output, offset, rawLength) != checksum)
+            throw new IOException("Compressed file is corrupted (checksum mismatch)");
+    }
+
+    /**
+     * Reads the codeTable of a block, or the lengths a DELTA_BLOCK changes in the previous one,
+     * and sets the decoder to it
+     *
+     * @param in buffer holding the block (not moved)
+     * @param position index of the codeTable
+     * @param end index after the last byte of the block
+     * @param delta true to read changes to the previous codeTable
+     * @return index after the codeTable
+     * @throws IOException if the codeTable is not valid (or there is no previous one to change)
+     */
+    private int readCodeTable(ByteBuffer in, int position, int end, boolean delta) throws IOException {
+        if (delta && !hasTable)
+            throw new IOException("Block refers to the code table of a previous block (blocks are decoded in order)");
+        hasTable = false; // lengths are overwritten, a failed read leaves no previous codeTable
+        if (end - position < Short.BYTES)
+            throw new IOException("invalid code table in given stream");
+        int count = in.getShort(position) & 0xFFFF;
+        position += Short.BYTES;
+        int tableLength = delta ? 2 * count : count; // each change is a character and its length
+        if (count > CHARACTER_COUNT || tableLength >= end - position) // padding bits follow the codeTable
+            throw new IOException("invalid code table in given stream");
+        if (delta) {
+            for (int i = 0; i < tableLength; i += 2)
+                lengths[in.get(position + i) & 0xFF] = in.get(position + i + 1) & 0xFF;
+        } else {
+            for (int symbol = 0; symbol < CHARACTER_COUNT; symbol++)
+                lengths[symbol] = symbol < count ? in.get(position + symbol) & 0xFF : 0;
+        }
+        try {
+            codeTable.setCanonicalCodes(lengths, nextCode);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid code table in given stream");
+        }
+        if (decoder == null)
+            decoder = new HuffmanDecoder(codeTable);
+        else
+            decoder.setCodeTable(codeTable);
+        hasTable = true;
+        return position + tableLength;
+    }
+
+    /**
+     * Used to start a new stream: blocks before it are no longer referred to
+     */
+    public void reset() {
+        hasTable = false;
+    }
+
+    /**
+     * Copies the raw bytes of a STORED_BLOCK and checks them against the stored checksum
+     *
+     * @param in buffer holding the block (not moved)
+     * @param position index of the checksum
+     * @param end index after the last byte of the block
+     * @param rawLength number of bytes to copy
+     * @param output buffer to store the raw bytes in
+     * @param offset index of the first raw byte in output
+     * @throws IOException if the block is not in the expected format or fails the checksum
+     */
+    private void copyStored(ByteBuffer in, int position, int end, int rawLength,
+                            ByteBuffer output, int offset) throws IOException {
+        if (rawLength <= 0 || end - position != Integer.BYTES + rawLength || output.limit() - offset < rawLength)
+            throw new IOException("invalid block in given file");
+        int checksum = in.getInt(position);
+        output.slice(offset, rawLength).put(in.slice(position + Integer.BYTES, rawLength));
+        if (HuffmanBlock.checksum(crc, output, offset, rawLength) != checksum)
+            throw new IOException("Compressed file is corrupted (checksum mismatch)");
+    }
+
+    /**
+     * Decodes the payload of a HUFFMAN_BLOCK (REPEAT_BLOCK, DELTA_BLOCK) with the decoder of its codeTable
+     *
+     * @param in buffer holding the block (not moved)
+     * @param position index of the padding bits byte
+     * @param end index after the last byte of the block
+     * @param rawLength number of bytes to decode
+     * @param output buffer to store the decoded bytes in
+     * @param offset index of the first decoded byte in output
+     * @return true if every bit of the payload but the padding was decoded
+     * @throws IOException if the padding bits are out of range
+     */
+    private boolean decodePayload(ByteBuffer in, int position, int end, int rawLength,
+                                  ByteBuffer output, int offset) throws IOException {
+        int paddingBits = in.get(position++) & 0xFF;
+        if (paddingBits >= Byte.SIZE)
+            throw new IOException("invalid block in given file");
+        reader.reset(in, position, end);
+        decoder.decode(reader, output, offset, rawLength);
+        return reader.getBitPosition() == (long) (end - position) * Byte.SIZE - paddingBits;
+    }
+
+    /**
+     * Decodes the streams of an INTERLEAVED_BLOCK with the decoder of its codeTable
+     *
+     * @param in buffer holding the block (not moved)
+     * @param position index of the padding bits of the first stream
+     * @param end index after the last byte of the block
+     * @param rawLength number of bytes to decode
+     * @param output buffer to store the decoded bytes in
+     * @param offset index of the first decoded byte in output
+     * @return true if every bit of every stream but its padding was decoded
+     * @throws IOException if the padding bits or the stream lengths are out of range
+     */
+    private boolean decodeStreams(ByteBuffer in, int position, int end, int rawLength,
+                                  ByteBuffer output, int offset) throws IOException {
+        // 1. padding bits of each stream, then the length of each stream but the last
+        int headerLength = STREAM_COUNT + (STREAM_COUNT - 1) * Integer.BYTES;
+        if (end - position < headerLength)
+            throw new IOException("invalid block in given file");
+        streamStarts[0] = position + headerLength;
+        for (int stream = 0; stream < STREAM_COUNT - 1; stream++) {
+            int streamLength = in.getInt(position + STREAM_COUNT + stream * Integer.BYTES);
+            if (streamLength < 0 || streamLength > end - streamStarts[stream])
+                throw new IOException("invalid block in given file");
+            streamStarts[stream + 1] = streamStarts[stream] + streamLength;
+        }
+        streamStarts[STREAM_COUNT] = end;
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            if ((in.get(position + stream) & 0xFF) >= Byte.SIZE)
+                throw new IOException("invalid block in given file");
+        }
+
+        // 2. decoding the streams together
+        decoder.decodeInterleaved(in, streamStarts, output, offset, rawLength, decodedBits);
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            long streamBits = (long) (streamStarts[stream + 1] - streamStarts[stream]) * Byte.SIZE;
+            if (decodedBits[stream] != streamBits - (in.get(position + stream) & 0xFF))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Empty constructor for HuffmanDecompressor object
+     */
+    public HuffmanDecompressor() {}
+}
@@ -0,0 +1,169 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * HuffmanSeekableFile object reads byte ranges of a file compressed in block mode
+ * without decompressing the whole file. Every block starts with its own CodeTable,
+ * and the BlockIndex stored at the end of the file records where each block starts
+ * in the compressed file and in the uncompressed content, so every block is a checkpoint:
+ * a read only decodes the blocks overlapping the requested range (the block size given
+ * at compress time is the checkpoint interval). The last decoded block is kept,
+ * so consecutive reads inside one block decode it once.
+ * Like HuffmanDecompressor, it is only used by one thread at a time
+ */
+public class HuffmanSeekableFile implements Closeable {
+    // static attributes
+    // number of bytes readLine looks at on each side of the given byte (longer lines are cut)
+    public static final int MAX_LINE = 4096;
+
+    // instance attributes
+    // channel of the compressed file
+    private final FileChannel channel;
+    // index of the blocks of the compressed file
+    private final BlockIndex index;
+    // decompressor reused for every block
+    private final HuffmanDecompressor decompressor = new HuffmanDecompressor();
+    // compressed bytes and decoded bytes of the last decoded block
+    private ByteBuffer blockBytes = ByteBuffer.allocate(0);
+    private ByteBuffer rawBytes = ByteBuffer.allocate(0);
+    // last decoded block (-1 before the first read)
+    private int decodedBlock = -1;
+    // number of blocks decoded so far (a block decoded again counts again)
+    private long decodeCount;
+
+    /**
+     * Used to read part of the uncompressed content
+     *
+     * @param uncompressedOffset offset of the first byte to read in the uncompressed content
+     * @param length number of bytes to read
+     * @return read bytes
+     * @throws IOException if the file can not be read or a block fails its checksum
+     * @throws IllegalArgumentException if the range is not inside the uncompressed content
+     */
+    public byte[] read(long uncompressedOffset, int length) throws IOException {
+        if (uncompressedOffset < 0 || length < 0 || uncompressedOffset > getLength() - length)
+            throw new IllegalArgumentException("Range should be inside the " + getLength() + " uncompressed bytes");
+
+        byte[] content = new byte[length];
+        for (int copied = 0; copied < length; ) {
+            // 1. decoding the block holding the next byte (unless it is the last decoded block)
+            long position = uncompressedOffset + copied;
+            int block = index.findBlock(position);
+            ByteBuffer decoded = decodeBlock(block);
+            // 2. copying the part of the block inside the range
+            int from = (int) (position - index.getRawOffset(block));
+            int count = Math.min(length - copied, decoded.limit() - from);
+            decoded.get(from, content, copied, count);
+            copied += count;
+        } return content;
+    }
+
+    /**
+     * Used to read the line holding a byte of the uncompressed content
+     *
+     * @param uncompressedOffset offset of the byte in the uncompressed content
+     * @return bytes of the line, without its line break (at most MAX_LINE bytes on each side of the byte)
+     * @throws IOException if the file can not be read or a block fails its checksum
+     */
+    public byte[] readLine(long uncompressedOffset) throws IOException {
+        // 1. reading up to MAX_LINE bytes on each side of the byte
+        long from = Math.max(0, uncompressedOffset - MAX_LINE);
+        long to = Math.min(getLength(), uncompressedOffset + MAX_LINE);
+        byte[] around = read(from, (int) (to - from));
+        // 2. keeping the bytes between the line breaks around the byte
+        int start = (int) (uncompressedOffset - from), end = start;
+        while (start > 0 && around[start - 1] != '\n')
+            start--;
+        while (end < around.length && around[end] != '\n')
+            end++;
+        if (end > start && around[end - 1] == '\r') // CRLF line break
+            end--;
+        return Arrays.copyOfRange(around, start, end);
+    }
+
+    /**
+     * Decodes given block (nothing is done if it is the last decoded block)
+     *
+     * @param block block to decode
+     * @return decoded bytes of the block (from 0 to its limit, valid until another block is decoded)
+     * @throws IOException if the file can not be read or the block fails its checksum
+     */
+    ByteBuffer decodeBlock(int block) throws IOException {
+        int rawLength = index.getRawLength(block);
+        if (block != decodedBlock) {
+            decodedBlock = -1; // buffers are overwritten, a failed decode leaves no block
+            blockBytes = readCompressedBlock(block, blockBytes);
+            if (rawBytes.capacity() < rawLength)
+                rawBytes = ByteBuffer.allocate(rawLength);
+            rawBytes.clear();
+            decodeCount++;
+            if (decompressor.decompress(blockBytes, rawBytes) != rawLength)
+                throw new IOException("invalid block index in given file");
+            decodedBlock = block;
+        } return rawBytes.duplicate().position(0).limit(rawLength);
+    }
+
+    /**
+     * Reads the compressed bytes of given block
+     *
+     * @param block block to read
+     * @param buffer buffer to read into (replaced by a larger one if the block does not fit)
+     * @return buffer holding the block, from its position to its limit
+     * @throws IOException if the file can not be read
+     */
+    ByteBuffer readCompressedBlock(int block, ByteBuffer buffer) throws IOException {
+        int compressedLength = index.getCompressedLength(block);
+        if (buffer.capacity() < compressedLength)
+            buffer = ByteBuffer.allocate(compressedLength);
+        buffer.clear().limit(compressedLength);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, index.getOffset(block) + buffer.position()) < 0)
+                throw new IOException("Unexpected end of the file");
+        } return buffer.flip();
+    }
+
+    /**
+     * Used to close the compressed file
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Constructor for HuffmanSeekableFile object
+     * @param compressedFile file compressed in block mode (with a BlockIndex)
+     * @throws IOException if the file can not be read, is not compressed in block mode or has no index
+     *         (or an index that does not add up to the original length)
+     */
+    public HuffmanSeekableFile(TextFile compressedFile) throws IOException {
+        channel = FileChannel.open(Paths.get(compressedFile.getFilePath()), StandardOpenOption.READ);
+        try {
+            long originalLength = HuffmanBlock.readHeader
+                    (new DataInputStream(Channels.newInputStream(channel.position(0))));
+            index = BlockIndex.readFrom(channel);
+            if (index == null)
+                throw new IOException("Given file has no block index");
+            if (originalLength >= 0 && index.getTotalRawLength() != originalLength)
+                throw new IOException("invalid block index in given file");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // getter methods
+    public long getLength() { return index.getTotalRawLength(); }
+    public int getBlockCount() { return index.getBlockCount(); }
+    public BlockIndex getIndex() { return index; }
+    public long getDecodeCount() { return decodeCount; }
+}
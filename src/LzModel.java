@@ -0,0 +1,215 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * LzModel object holds the CodeTables of an LZ77 block.
+ * The tokens found by a MatchFinder are coded with two CodeTables:
+ * - literal/length table: byte values (0 to 255), then one character per length bucket
+ * - distance table: one character per distance bucket
+ * A bucket covers a range of values, the offset inside the range follows
+ * its binary value as extra bits (bucket b covers 2^extraBits(b) values).
+ * Stored content: literal/length CodeTable, distance CodeTable (see CodeTable.writeTo)
+ */
+public class LzModel {
+    // static attributes
+    // number of length buckets (lengths up to MatchFinder.MAX_MATCH)
+    private static final int LENGTH_BUCKETS = 32;
+    // number of characters of the literal/length table
+    public static final int LITERAL_LENGTH_COUNT = HuffmanCompress.CHARACTER_COUNT + LENGTH_BUCKETS;
+    // number of characters of the distance table (distances up to MatchFinder.MAX_WINDOW)
+    public static final int DISTANCE_COUNT = 48;
+    // smallest maximum length of a binary value (every literal/length character needs one)
+    private static final int MIN_CODE_LENGTH = 9;
+
+    // instance attributes
+    // literal/length and distance CodeTables
+    private final CodeTable literalTable;
+    private final CodeTable distanceTable;
+    // tokens of the block and their number (only kept while encoding)
+    private final long[] tokens;
+    private final int tokenCount;
+    // number of bits of the binary values (and extra bits) of the block (0 if read from a block)
+    private final long encodedLength;
+
+    /**
+     * Used to build the LzModel of given content
+     *
+     * @param content content to model, from its position to its limit (not moved)
+     * @param maxCodeLength maximum length of a binary value (raised to 9 if lower)
+     * @param matchFinder MatchFinder to find the tokens with
+     * @return built LzModel
+     */
+    public static LzModel build(ByteBuffer content, int maxCodeLength, MatchFinder matchFinder) {
+        // 1. finding the tokens
+        long[] tokens = new long[content.remaining()];
+        int tokenCount = matchFinder.findTokens(content, tokens);
+
+        // 2. counting the characters of each table (extra bits are counted as they go)
+        int[] literalFrequencies = new int[LITERAL_LENGTH_COUNT];
+        int[] distanceFrequencies = new int[DISTANCE_COUNT];
+        long extraBits = 0;
+        for (int i = 0; i < tokenCount; i++) {
+            long token = tokens[i];
+            if (MatchFinder.isMatch(token)) {
+                int lengthBucket = bucketOf(MatchFinder.getLength(token) - MatchFinder.MIN_MATCH);
+                int distanceBucket = bucketOf(MatchFinder.getDistance(token) - 1);
+                literalFrequencies[HuffmanCompress.CHARACTER_COUNT + lengthBucket]++;
+                distanceFrequencies[distanceBucket]++;
+                extraBits += extraBits(lengthBucket) + extraBits(distanceBucket);
+            } else
+                literalFrequencies[(int) token]++;
+        }
+
+        // 3. building both CodeTables (with the same tree builder as single tables)
+        int codeLength = Math.max(maxCodeLength, MIN_CODE_LENGTH);
+        CodeTable literalTable = CodeTable.fromLengths(HuffmanCompress.setCodeLengths(literalFrequencies, codeLength));
+        CodeTable distanceTable = CodeTable.fromLengths(HuffmanCompress.setCodeLengths(distanceFrequencies, codeLength));
+        long encodedLength = literalTable.getEncodedLength(literalFrequencies)
+                + distanceTable.getEncodedLength(distanceFrequencies) + extraBits;
+        return new LzModel(literalTable, distanceTable, tokens, tokenCount, encodedLength);
+    }
+
+    /**
+     * Used to pack the binary values (and extra bits) of the tokens of the block
+     * @param writer BitWriter to pack the binary values into
+     */
+    public void encode(BitWriter writer) {
+        for (int i = 0; i < tokenCount; i++) {
+            long token = tokens[i];
+            if (MatchFinder.isMatch(token)) {
+                int length = MatchFinder.getLength(token) - MatchFinder.MIN_MATCH;
+                int distance = MatchFinder.getDistance(token) - 1;
+                int lengthBucket = bucketOf(length);
+                int distanceBucket = bucketOf(distance);
+                int lengthCharacter = HuffmanCompress.CHARACTER_COUNT + lengthBucket;
+                writer.writeBits(literalTable.getCode(lengthCharacter), literalTable.getLength(lengthCharacter));
+                writer.writeBits(length - bucketBase(lengthBucket), extraBits(lengthBucket));
+                writer.writeBits(distanceTable.getCode(distanceBucket), distanceTable.getLength(distanceBucket));
+                writer.writeBits(distance - bucketBase(distanceBucket), extraBits(distanceBucket));
+            } else
+                writer.writeBits(literalTable.getCode((int) token), literalTable.getLength((int) token));
+        }
+    }
+
+    /**
+     * Used to decode a known number of bytes into given buffer (heap or memory mapped).
+     * Matches are copied from the bytes decoded before them, one byte at a time
+     * (a match may overlap its own bytes)
+     *
+     * @param reader BitReader positioned at the first binary value
+     * @param output buffer to store the decoded bytes in (its position is not used)
+     * @param offset index of the first decoded byte in output
+     * @param length number of bytes to decode
+     * @throws IOException if a binary value is not in its CodeTable or a match points outside the decoded bytes
+     */
+    public void decode(BitReader reader, ByteBuffer output, int offset, int length) throws IOException {
+        HuffmanDecoder literalDecoder = new HuffmanDecoder(literalTable);
+        HuffmanDecoder distanceDecoder = new HuffmanDecoder(distanceTable);
+
+        int end = offset + length;
+        try {
+            for (int i = offset; i < end; ) {
+                int character = literalDecoder.decodeSymbol(reader);
+                if (character < HuffmanCompress.CHARACTER_COUNT) {
+                    output.put(i++, (byte) character);
+                    continue;
+                }
+                int lengthBucket = character - HuffmanCompress.CHARACTER_COUNT;
+                int matchLength = MatchFinder.MIN_MATCH + bucketBase(lengthBucket)
+                        + readExtraBits(reader, lengthBucket);
+                int distanceBucket = distanceDecoder.decodeSymbol(reader);
+                int distance = 1 + bucketBase(distanceBucket) + readExtraBits(reader, distanceBucket);
+                if (distance > i - offset || matchLength > end - i)
+                    throw new IOException("invalid match in given file");
+                for (int k = 0; k < matchLength; k++, i++)
+                    output.put(i, output.get(i - distance));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Compressed file is corrupted (invalid binary value)");
+        }
+    }
+
+    /**
+     * @param value length (minus MIN_MATCH) or distance (minus 1)
+     * @return bucket of the value: values below 4 have their own bucket,
+     *         above that each power of 2 is split into 2 buckets
+     */
+    private static int bucketOf(int value) {
+        if (value < 4)
+            return value;
+        int highBit = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(value);
+        return 2 * highBit + (value >>> (highBit - 1) & 1);
+    }
+
+    /**
+     * @param bucket length or distance bucket
+     * @return number of extra bits following the binary value of the bucket
+     */
+    private static int extraBits(int bucket) {
+        return bucket < 4 ? 0 : (bucket >>> 1) - 1;
+    }
+
+    /**
+     * @param bucket length or distance bucket
+     * @return first value of the bucket
+     */
+    private static int bucketBase(int bucket) {
+        return bucket < 4 ? bucket : (2 | bucket & 1) << extraBits(bucket);
+    }
+
+    /**
+     * @param reader BitReader positioned at the extra bits of a bucket
+     * @param bucket decoded bucket
+     * @return offset of the value inside the bucket
+     */
+    private static int readExtraBits(BitReader reader, int bucket) {
+        int count = extraBits(bucket);
+        return count == 0 ? 0 : (int) reader.readBits(count);
+    }
+
+    /**
+     * Used to store both CodeTables
+     *
+     * @param out stream to write into
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    public int writeTo(DataOutputStream out) throws IOException {
+        return literalTable.writeTo(out) + distanceTable.writeTo(out);
+    }
+
+    /**
+     * Used to read an LzModel stored by writeTo
+     *
+     * @param in buffer to read from (moved past the stored model)
+     * @return read LzModel
+     * @throws IOException if the stored model is not in the expected format
+     */
+    public static LzModel readFrom(ByteBuffer in) throws IOException {
+        CodeTable literalTable = CodeTable.readFrom(in, LITERAL_LENGTH_COUNT);
+        CodeTable distanceTable = CodeTable.readFrom(in, DISTANCE_COUNT);
+        return new LzModel(literalTable, distanceTable, null, 0, 0);
+    }
+
+    /**
+     * Constructor for LzModel object
+     * @param literalTable literal/length CodeTable
+     * @param distanceTable distance CodeTable
+     * @param tokens tokens of the block (null if read from a block)
+     * @param tokenCount number of tokens
+     * @param encodedLength number of bits of the binary values of the block
+     */
+    private LzModel(CodeTable literalTable, CodeTable distanceTable,
+                    long[] tokens, int tokenCount, long encodedLength) {
+        this.literalTable = literalTable;
+        this.distanceTable = distanceTable;
+        this.tokens = tokens;
+        this.tokenCount = tokenCount;
+        this.encodedLength = encodedLength;
+    }
+
+    // getter methods
+    public long getEncodedLength() { return encodedLength; }
+}
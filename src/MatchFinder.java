@@ -0,0 +1,216 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * MatchFinder object turns content into LZ77 tokens (literals and matches) with hash chains.
+ * The position of every 4 bytes is kept under their hash, so earlier positions starting
+ * with the same bytes are found by following the chain of that hash.
+ * Higher levels follow longer chains and look one position ahead before taking a match
+ * (better matches, slower), level 1 is the fastest.
+ * A MatchFinder holds no state between calls, so it can be shared between threads
+ */
+public class MatchFinder {
+    // static attributes
+    // shortest match (shorter repeats are cheaper as literals)
+    public static final int MIN_MATCH = 4;
+    // longest match
+    public static final int MAX_MATCH = MIN_MATCH + 0xFFFF;
+    // largest window (distances are stored with up to 22 extra bits)
+    public static final int MAX_WINDOW = 1 << 24;
+    // default number of bytes a match can point back
+    public static final int DEFAULT_WINDOW = 64 * 1024;
+    // fastest, default and best (slowest) levels
+    public static final int FAST_LEVEL = 1;
+    public static final int DEFAULT_LEVEL = 6;
+    public static final int MAX_LEVEL = 9;
+    // number of positions checked on a chain, per level
+    private static final int[] CHAIN_LENGTH = {0, 4, 8, 16, 32, 64, 128, 256, 1024, 4096};
+    // length of a match good enough to stop searching, per level
+    private static final int[] NICE_LENGTH = {0, 16, 32, 64, 96, 128, 192, 258, 1024, MAX_MATCH};
+    // levels from LAZY_LEVEL on look one position ahead for a longer match
+    private static final int LAZY_LEVEL = 4;
+    // number of bits of the hash of 4 bytes
+    private static final int HASH_BITS = 16;
+
+    // instance attributes
+    private final int level;
+    private final int windowSize;
+
+    /**
+     * Used to turn given content into tokens.
+     * A literal token is its byte value, a match token is length << 32 | distance
+     * (see isMatch, getLength, getDistance). Matches only point back into content
+     *
+     * @param content content to parse, from its position to its limit (not moved)
+     * @param tokens array to store the tokens in (at least as long as content)
+     * @return number of tokens
+     */
+    public int findTokens(ByteBuffer content, long[] tokens) {
+        int base = content.position();
+        int length = content.remaining();
+        int tokenCount = 0;
+
+        // head -> last position of each hash, chain -> previous position with the same hash
+        int[] head = new int[1 << HASH_BITS];
+        Arrays.fill(head, -1);
+        int chainSize = Integer.highestOneBit(Math.max(1, Math.min(windowSize, length)) * 2 - 1);
+        int[] chain = new int[chainSize];
+        int lastHashed = length - MIN_MATCH; // last position with 4 bytes to hash
+
+        int inserted = -1; // every position up to inserted is in the chains
+        for (int i = 0; i < length; ) {
+            long match = i <= lastHashed ? findMatch(content, base, i, length, head, chain) : 0;
+            inserted = insert(content, base, inserted, i, lastHashed, head, chain);
+
+            // looking one position ahead, a longer match there makes i a literal
+            if (level >= LAZY_LEVEL) {
+                while (match != 0 && getLength(match) < NICE_LENGTH[level] && i + 1 <= lastHashed) {
+                    long next = findMatch(content, base, i + 1, length, head, chain);
+                    if (next == 0 || getLength(next) <= getLength(match))
+                        break;
+                    tokens[tokenCount++] = content.get(base + i) & 0xFF;
+                    inserted = insert(content, base, inserted, ++i, lastHashed, head, chain);
+                    match = next;
+                }
+            }
+
+            if (match != 0) {
+                tokens[tokenCount++] = match;
+                i += getLength(match);
+                // positions inside the match can be found by later matches
+                inserted = insert(content, base, inserted, i - 1, lastHashed, head, chain);
+            } else
+                tokens[tokenCount++] = content.get(base + i++) & 0xFF;
+        }
+        return tokenCount;
+    }
+
+    /**
+     * Looks for the longest match of position i among the positions on its hash chain
+     *
+     * @param content content to parse
+     * @param base index of the first byte of content
+     * @param i position to find a match for (at most length - MIN_MATCH)
+     * @param length number of bytes of content
+     * @param head last position of each hash
+     * @param chain previous position with the same hash
+     * @return found match token, 0 if no match of at least MIN_MATCH bytes is found
+     */
+    private long findMatch(ByteBuffer content, int base, int i, int length, int[] head, int[] chain) {
+        int maxLength = Math.min(MAX_MATCH, length - i);
+        int bestLength = MIN_MATCH - 1;
+        int bestDistance = 0;
+        int candidate = head[hash(content, base + i)];
+        for (int checked = 0; candidate >= 0 && i - candidate <= windowSize
+                && checked < CHAIN_LENGTH[level]; checked++) {
+            // a longer match has to match the byte after the best match so far
+            if (content.get(base + candidate + bestLength) == content.get(base + i + bestLength)) {
+                int matchLength = matchLength(content, base + candidate, base + i, maxLength);
+                if (matchLength > bestLength) {
+                    bestLength = matchLength;
+                    bestDistance = i - candidate;
+                    if (matchLength >= NICE_LENGTH[level] || matchLength == maxLength)
+                        break;
+                }
+            }
+            candidate = chain[candidate & (chain.length - 1)];
+        }
+        return bestDistance == 0 ? 0 : (long) bestLength << 32 | bestDistance;
+    }
+
+    /**
+     * Adds the positions after inserted up to given position to the hash chains
+     *
+     * @param content content to parse
+     * @param base index of the first byte of content
+     * @param inserted last position in the chains
+     * @param position last position to add
+     * @param lastHashed last position with 4 bytes to hash
+     * @param head last position of each hash
+     * @param chain previous position with the same hash
+     * @return last position in the chains
+     */
+    private static int insert(ByteBuffer content, int base, int inserted, int position,
+                              int lastHashed, int[] head, int[] chain) {
+        for (int p = inserted + 1; p <= Math.min(position, lastHashed); p++) {
+            int hash = hash(content, base + p);
+            chain[p & (chain.length - 1)] = head[hash];
+            head[hash] = p;
+        } return Math.max(inserted, position);
+    }
+
+    /**
+     * @param content content to parse
+     * @param index index of the first of 4 bytes
+     * @return hash of the 4 bytes
+     */
+    private static int hash(ByteBuffer content, int index) {
+        return content.getInt(index) * 0x9E3779B1 >>> (Integer.SIZE - HASH_BITS);
+    }
+
+    /**
+     * Counts the matching bytes of two positions, 8 bytes at a time
+     *
+     * @param content content to parse
+     * @param from index of the earlier position
+     * @param to index of the later position
+     * @param maxLength maximum number of bytes to compare
+     * @return number of matching bytes
+     */
+    private static int matchLength(ByteBuffer content, int from, int to, int maxLength) {
+        int matched = 0;
+        for (; matched <= maxLength - Long.BYTES; matched += Long.BYTES) {
+            long difference = content.getLong(from + matched) ^ content.getLong(to + matched);
+            if (difference != 0) // first differing byte (content is read big-endian)
+                return matched + Long.numberOfLeadingZeros(difference) / Byte.SIZE;
+        }
+        while (matched < maxLength && content.get(from + matched) == content.get(to + matched))
+            matched++;
+        return matched;
+    }
+
+    /**
+     * @param token literal or match token
+     * @return true if the token is a match
+     */
+    public static boolean isMatch(long token) { return token > 0xFF; }
+
+    /**
+     * @param token match token
+     * @return number of bytes of the match
+     */
+    public static int getLength(long token) { return (int) (token >>> 32); }
+
+    /**
+     * @param token match token
+     * @return number of bytes the match points back
+     */
+    public static int getDistance(long token) { return (int) token; }
+
+    /**
+     * Constructor for MatchFinder object (with default window)
+     * @param level compression level (FAST_LEVEL to MAX_LEVEL)
+     */
+    public MatchFinder(int level) {
+        this(level, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor for MatchFinder object
+     * @param level compression level (FAST_LEVEL to MAX_LEVEL)
+     * @param windowSize number of bytes a match can point back (1 to MAX_WINDOW)
+     */
+    public MatchFinder(int level, int windowSize) {
+        if (level < FAST_LEVEL || level > MAX_LEVEL)
+            throw new IllegalArgumentException("Level should be " + FAST_LEVEL + " to " + MAX_LEVEL);
+        if (windowSize < 1 || windowSize > MAX_WINDOW)
+            throw new IllegalArgumentException("Window size should be 1 to " + MAX_WINDOW);
+        this.level = level;
+        this.windowSize = windowSize;
+    }
+
+    // getter methods
+    public int getLevel() { return level; }
+    public int getWindowSize() { return windowSize; }
+}
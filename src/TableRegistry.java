@@ -0,0 +1,226 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Used to compress small records (e.g. JSON or log lines) against pretrained CodeTables.
+ * A CodeTable is trained once from sample records, stored under a table ID and kept
+ * in memory, so that compressing a record is only the bit-packing loop.
+ * A compressed record holds no header beyond its table ID:
+ * - table ID (unsigned short)
+ * - binary values of the record, followed by the binary value of END_SYMBOL (padded with 0s)
+ */
+public class TableRegistry {
+    // static attributes
+    // first 4 bytes of a stored table file ("HUFT")
+    public static final int TABLE_MAGIC = 0x48554654;
+    // largest table ID (IDs are stored as unsigned short)
+    public static final int MAX_TABLE_ID = 0xFFFF;
+    // character marking the end of a record (after the 256 byte values)
+    public static final int END_SYMBOL = HuffmanCompress.CHARACTER_COUNT;
+    // number of characters of a trained table (byte values + END_SYMBOL)
+    public static final int SYMBOL_COUNT = END_SYMBOL + 1;
+    // default maximum length of a binary value (bounds the size of unseen byte values)
+    public static final int DEFAULT_MAX_CODE_LENGTH = 15;
+    // number of bytes before the binary values of a record
+    private static final int ID_BYTES = Short.BYTES;
+
+    // registered tables and their decoders (looked up by table ID)
+    private static final ConcurrentHashMap<Integer, CodeTable> tables = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, HuffmanDecoder> decoders = new ConcurrentHashMap<>();
+
+    /**
+     * Used to train a CodeTable from sample records
+     * @param samples sample records
+     * @return trained CodeTable
+     */
+    public static CodeTable trainTable(List<byte[]> samples) {
+        return trainTable(samples, DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Used to train a CodeTable from sample records.
+     * Every byte value gets a binary value (byte values missing from the samples
+     * count as seen once), so any record can be compressed with the trained table
+     *
+     * @param samples sample records
+     * @param maxCodeLength maximum length of a binary value (9 to CodeTable.MAX_LENGTH)
+     * @return trained CodeTable
+     */
+    public static CodeTable trainTable(List<byte[]> samples, int maxCodeLength) {
+        int[] frequencyList = new int[SYMBOL_COUNT];
+        for (byte[] sample : samples) {
+            int[] sampleFrequencies = HuffmanCompress.setFrequency(sample, 0, sample.length);
+            for (int value = 0; value < END_SYMBOL; value++)
+                frequencyList[value] += sampleFrequencies[value];
+        }
+        frequencyList[END_SYMBOL] = samples.size(); // one END_SYMBOL per record
+        return trainTable(frequencyList, maxCodeLength);
+    }
+
+    /**
+     * Used to train a CodeTable from a corpus file holding one record per line
+     * (the file is memory mapped, see TextFile.mapFile)
+     *
+     * @param corpus corpus file (smaller than 2GB)
+     * @return trained CodeTable
+     * @throws IOException if the file can not be read
+     */
+    public static CodeTable trainTable(TextFile corpus) throws IOException {
+        ByteBuffer content = corpus.mapFile(0, corpus.getFileLength());
+        int[] frequencyList = Arrays.copyOf(HuffmanCompress.setFrequency(content), SYMBOL_COUNT);
+        frequencyList[END_SYMBOL] = frequencyList['\n'];
+        return trainTable(frequencyList, DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Builds a canonical CodeTable giving every character a binary value
+     * @param frequencyList frequency of each character (including END_SYMBOL)
+     * @param maxCodeLength maximum length of a binary value
+     * @return built CodeTable
+     */
+    private static CodeTable trainTable(int[] frequencyList, int maxCodeLength) {
+        // 2^(maxCodeLength) binary values are needed for every character to have one
+        if (maxCodeLength <= Byte.SIZE || maxCodeLength > CodeTable.MAX_LENGTH)
+            throw new IllegalArgumentException("Maximum code length should be 9 to " + CodeTable.MAX_LENGTH);
+        for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++)
+            frequencyList[symbol] = Math.max(1, frequencyList[symbol]);
+        return CodeTable.fromLengths(HuffmanCompress.setCodeLengths(frequencyList, maxCodeLength));
+    }
+
+    /**
+     * Used to register a trained CodeTable under given table ID.
+     * Registering the same table again is allowed, a different table under a used ID is not
+     * (records compressed with the first table could no longer be decompressed).
+     * A copy of the table is registered, so later changes to given table do not reach the registry
+     *
+     * @param tableId ID of the table (0 to MAX_TABLE_ID)
+     * @param codeTable trained CodeTable (see trainTable)
+     */
+    public static void register(int tableId, CodeTable codeTable) {
+        if (tableId < 0 || tableId > MAX_TABLE_ID)
+            throw new IllegalArgumentException("Table ID should be 0 to " + MAX_TABLE_ID);
+        if (codeTable.getSymbolCount() != SYMBOL_COUNT || codeTable.getLength(END_SYMBOL) == 0)
+            throw new IllegalArgumentException("Given table is not a trained table");
+
+        CodeTable registered = tables.putIfAbsent(tableId, CodeTable.fromLengths(codeTable.getLengths()));
+        if (registered != null && !Arrays.equals(registered.getLengths(), codeTable.getLengths()))
+            throw new IllegalArgumentException("Table ID " + tableId + " is already registered");
+    }
+
+    /**
+     * @param tableId ID of the table
+     * @return CodeTable registered under given ID
+     */
+    public static CodeTable getTable(int tableId) {
+        CodeTable codeTable = tables.get(tableId);
+        if (codeTable == null)
+            throw new IllegalArgumentException("Unknown table ID " + tableId);
+        return codeTable;
+    }
+
+    /**
+     * Used to store a registered table into given file
+     * (TABLE_MAGIC, table ID, then the code lengths as written by CodeTable.writeTo)
+     *
+     * @param tableId ID of the table
+     * @param file file to store the table in
+     * @throws IOException if the file can not be written
+     */
+    public static void storeTable(int tableId, TextFile file) throws IOException {
+        CodeTable codeTable = getTable(tableId);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file.getFilePath()))) {
+            out.writeInt(TABLE_MAGIC);
+            out.writeShort(tableId);
+            codeTable.writeTo(out);
+        }
+    }
+
+    /**
+     * Used to load a table stored by storeTable and register it
+     * @param file file the table is stored in
+     * @return ID of the loaded table
+     * @throws IOException if the file can not be read or is not a stored table
+     */
+    public static int loadTable(TextFile file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file.getFilePath()))) {
+            if (in.readInt() != TABLE_MAGIC)
+                throw new IOException("Given file is not a stored table");
+            int tableId = in.readUnsignedShort();
+            register(tableId, CodeTable.readFrom(in, SYMBOL_COUNT));
+            return tableId;
+        }
+    }
+
+    /**
+     * Used to compress a record with a registered table
+     *
+     * @param tableId ID of the table to compress with
+     * @param record record to compress
+     * @return compressed record
+     */
+    public static byte[] compressRecord(int tableId, byte[] record) {
+        CodeTable codeTable = getTable(tableId);
+        BitWriter writer = new BitWriter(ID_BYTES + record.length);
+
+        writer.writeBits(tableId, Short.SIZE); // table ID (the only header)
+        HuffmanCompress.encodeToBinary(record, 0, record.length, codeTable, writer);
+        writer.writeBits(codeTable.getCode(END_SYMBOL), codeTable.getLength(END_SYMBOL));
+        writer.finish();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Used to decompress a record compressed by compressRecord
+     * (its table should be registered first, see register or loadTable)
+     *
+     * @param compressed compressed record
+     * @return decompressed record
+     * @throws IOException if the record is not in the expected format
+     */
+    public static byte[] decompressRecord(byte[] compressed) throws IOException {
+        int tableId = getTableId(compressed);
+        CodeTable codeTable = tables.get(tableId);
+        if (codeTable == null)
+            throw new IOException("Unknown table ID " + tableId);
+        HuffmanDecoder decoder = decoders.computeIfAbsent(tableId, id -> new HuffmanDecoder(codeTable));
+        BitReader reader = new BitReader(compressed, ID_BYTES, compressed.length - ID_BYTES);
+        long bitLength = (long) (compressed.length - ID_BYTES) * Byte.SIZE;
+
+        byte[] record = new byte[2 * compressed.length];
+        int recordLength = 0;
+        try {
+            for (int symbol = decoder.decodeSymbol(reader); symbol != END_SYMBOL;
+                 symbol = decoder.decodeSymbol(reader)) {
+                if (reader.getBitPosition() > bitLength) // END_SYMBOL is missing
+                    throw new IOException("Compressed record is truncated");
+                if (recordLength == record.length)
+                    record = Arrays.copyOf(record, 2 * record.length);
+                record[recordLength++] = (byte) symbol;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid binary value in given record");
+        }
+        if (reader.getBitPosition() > bitLength)
+            throw new IOException("Compressed record is truncated");
+        return Arrays.copyOf(record, recordLength);
+    }
+
+    /**
+     * @param compressed compressed record
+     * @return ID of the table the record was compressed with
+     * @throws IOException if the record is too short
+     */
+    public static int getTableId(byte[] compressed) throws IOException {
+        if (compressed.length < ID_BYTES)
+            throw new IOException("Compressed record is truncated");
+        return (compressed[0] & 0xFF) << Byte.SIZE | compressed[1] & 0xFF;
+    }
+}
@@ -1,12 +1,20 @@
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 
 /**
  * Used to handle all Text File related operations
  */
 public class TextFile {
+    // static attributes
+    // maximum number of bytes mapped into memory at once
+    public static final int MAP_WINDOW = 256 * 1024 * 1024;
+
     // instance attributes
     // file path of the TextFile object
     private final String filePath;
@@ -49,6 +57,19 @@ public class TextFile {
         } return content; // returns the content of the file
     }
 
+    /**
+     * Used to read the exact bytes of the text file
+     * @return content of the text file as bytes
+     */
+    public byte[] readRawFile() {
+        try {
+            return Files.readAllBytes(Paths.get(filePath));
+        } catch (IOException e) { // handling exceptions
+            System.err.println("Can not read from the file");
+            return new byte[0];
+        }
+    }
+
     /**
      * Used to read encodedBytes from textFile
      * @return read list of encodedBytes
@@ -60,8 +81,8 @@ public class TextFile {
         try {
             // initiating the readBytes with length of given textFile
             readBytes = new byte[(int) file.length() - 1];
-            FileInputStream fStreamer = new FileInputStream(filePath);
-            fStreamer.read(readBytes); // reading from the fStreamer
+            DataInputStream fStreamer = new DataInputStream(new FileInputStream(filePath));
+            fStreamer.readFully(readBytes); // a single read may return fewer bytes
             fStreamer.close();
 
         } catch (NegativeArraySizeException e) {
@@ -71,6 +92,51 @@ public class TextFile {
         } return readBytes;
     }
 
+    /**
+     * Used to map part of the text file into memory (read only).
+     * Mapped bytes are paged in by the operating system and processed in place,
+     * without copying the file into the heap
+     *
+     * @param position offset of the first byte to map
+     * @param size number of bytes to map (at most Integer.MAX_VALUE, see MAP_WINDOW)
+     * @return mapped bytes of the file
+     * @throws IOException if the file can not be read
+     */
+    public MappedByteBuffer mapFile(long position, long size) throws IOException {
+        // mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+    }
+
+    /**
+     * Used to map part of the text file into memory for writing.
+     * Bytes put into the mapped buffer are written back to the file by the operating system,
+     * the file grows if the mapped part ends after its end
+     *
+     * @param position offset of the first byte to map
+     * @param size number of bytes to map (at most Integer.MAX_VALUE, see MAP_WINDOW)
+     * @return mapped bytes of the file
+     * @throws IOException if the file can not be written
+     */
+    public MappedByteBuffer mapFileForWrite(long position, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        }
+    }
+
+    /**
+     * Used to set the length of the text file (cutting or zero-extending it)
+     * @param length new length of the file in bytes
+     * @throws IOException if the file can not be written
+     */
+    public void setFileLength(long length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
+            file.setLength(length);
+        }
+    }
+
     /**
      * Used to write to the text file
      * @param toAdd content to write into the file
@@ -87,7 +153,7 @@ public class TextFile {
         }
 
         try {
-            FileWriter writer = new FileWriter(filePath);
+            FileWriter writer = new FileWriter(filePath, StandardCharsets.UTF_8);
             writer.write(toAdd); // toAdd is added to the textFile
             writer.close();
         } catch (IOException e) { // handling exceptions
@@ -100,8 +166,7 @@ public class TextFile {
      * @param toAdd list of encodedBytes to be added
      */
     public void writeBinaryFile(byte[] toAdd) {
-        try {
-            FileOutputStream fStreamer = new FileOutputStream(filePath);
+        try (FileOutputStream fStreamer = new FileOutputStream(filePath)) {
             fStreamer.write(toAdd); // writing encodedBytes to the textFile
 
         } catch (FileNotFoundException e) { // handling exceptions
@@ -112,23 +177,26 @@ public class TextFile {
     }
 
     /**
-     * Used to write a list to the textFile
-     * @param listToAdd list to add to the textFile
+     * Used to write a codeTable to the textFile
+     * @param codeTable codeTable to add to the textFile
      */
-    public void writeListFile(ArrayList<Node> listToAdd) {
-        int charValue;
+    public void writeListFile(CodeTable codeTable) {
         if (textFileNew(filePath)) // ensure textFile with given path exists
             // if not textFile with given path is created
             textFileCreate(filePath);
 
         try {
             FileWriter writer = new FileWriter(filePath);
-            for (Node node : listToAdd) { // looping through each Node
-                charValue = node.getValue(); // writing int number of the character
+            // looping through each character with a binary value
+            for (int charValue = 0; charValue < codeTable.getSymbolCount(); charValue++) {
+                if (codeTable.getLength(charValue) == 0)
+                    continue;
+                // writing int number of the character
                 // this is done to avoid any confusions
                 // e.g., adding '\n' would create another line in the textFile
                 writer.write(charValue + "\n");
-                writer.write(node.getPointer() + "\n"); // writing frequency of the character
+                // writing binary value of the character
+                writer.write(codeTable.getPointer(charValue) + "\n");
             } writer.close();
 
         } catch (IOException e) { // handling exceptions
@@ -177,6 +245,7 @@ public class TextFile {
         this.filePath = filePath;
     }
 
-    // getter method for filePath
+    // getter methods
     public String getFilePath() { return filePath; }
+    public long getFileLength() { return new File(filePath).length(); }
 }
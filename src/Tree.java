@@ -1,32 +1,185 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 
 /**
  * Tree object is used when constructing a Tree (Huffman Compression).
  * Tree object contains a getMinNode method and a
- * nodeList storing all of the TreeNodes
+ * nodeQueue storing the TreeNodes not merged yet (lowest frequency first,
+ * so that taking the lowest frequency TreeNode does not depend on the number of TreeNodes).
+ * Static methods build binary value lengths straight from frequencies,
+ * without TreeNode objects
  */
 public class Tree {
     // instance attribute
-    // nodeList storing all required TreeNodes
-    public ArrayList<TreeNode> nodeList = new ArrayList<>();
+    // nodeQueue storing the TreeNodes not merged yet
+    private final PriorityQueue<TreeNode> nodeQueue =
+            new PriorityQueue<>(Comparator.comparingInt(TreeNode::getFrequency));
 
     /**
-     * Used to return the TreeNode with lowest frequency from the treeList
+     * Used to add a TreeNode to the Tree
+     * @param node TreeNode to add
+     */
+    public void addNode(TreeNode node) {
+        nodeQueue.add(node);
+    }
+
+    /**
+     * Used to return the TreeNode with lowest frequency from the nodeQueue
      * and remove that TreeNode in the process
      *
      * @return Node with the lowest frequency
      */
     public TreeNode getMinNode() {
-        TreeNode minNode = nodeList.get(0);
-        // looping through all TreeNodes in nodeList
-        for (TreeNode node : nodeList) {
-            if (node.getFrequency() < minNode.getFrequency()) {
-                minNode = node; // minNode so far
+        return nodeQueue.poll();
+    }
+
+    /**
+     * @return number of TreeNodes not merged yet
+     */
+    public int size() {
+        return nodeQueue.size();
+    }
+
+    /**
+     * Used to get the binary value length of each character without building TreeNode objects.
+     * Leaves are sorted by frequency once, after which the Tree is built with two queues:
+     * the sorted leaves and the parent Nodes (created in non-decreasing frequency order),
+     * so the two lowest frequency Nodes are always at the front of the queues.
+     * Parents are stored as indices, the length of a character is the depth of its leaf
+     *
+     * @param frequencyList frequency of each character
+     * @return length of the binary value of each character (0 -> frequency of 0)
+     */
+    public static int[] buildCodeLengths(int[] frequencyList) {
+        int[] lengths = new int[frequencyList.length];
+
+        // leaves sorted by frequency (frequency and character packed into one long)
+        int leafCount = 0;
+        for (int frequency : frequencyList)
+            if (frequency > 0) leafCount++;
+        long[] leaves = new long[leafCount];
+        for (int symbol = 0, i = 0; symbol < frequencyList.length; symbol++)
+            if (frequencyList[symbol] > 0)
+                leaves[i++] = (long) frequencyList[symbol] << 32 | symbol;
+        Arrays.sort(leaves);
+
+        if (leafCount == 1) // extreme case, a single character still needs 1 bit
+            lengths[(int) leaves[0]] = 1;
+        if (leafCount <= 1)
+            return lengths;
+
+        // Nodes 0 to leafCount - 1 are the leaves, the rest are parents (in order of creation)
+        int nodeCount = 2 * leafCount - 1;
+        long[] frequencies = new long[nodeCount];
+        int[] parents = new int[nodeCount];
+        for (int i = 0; i < leafCount; i++)
+            frequencies[i] = leaves[i] >>> 32;
+
+        int nextLeaf = 0, nextParent = leafCount;
+        for (int parent = leafCount; parent < nodeCount; parent++) {
+            // taking the two Nodes with lowest frequency from the front of the two queues
+            for (int child = 0; child < 2; child++) {
+                int node;
+                if (nextLeaf < leafCount && (nextParent == parent
+                        || frequencies[nextLeaf] <= frequencies[nextParent]))
+                    node = nextLeaf++;
+                else
+                    node = nextParent++;
+                parents[node] = parent;
+                frequencies[parent] += frequencies[node];
             }
         }
-        nodeList.remove(minNode); // removing the TreeNode
-        return minNode;
+
+        // depth of every Node (parents always come after their children)
+        int[] depths = new int[nodeCount];
+        for (int node = nodeCount - 2; node >= 0; node--)
+            depths[node] = depths[parents[node]] + 1;
+        for (int i = 0; i < leafCount; i++)
+            lengths[(int) leaves[i]] = depths[i];
+        return lengths;
+    }
+
+    /**
+     * Used to get optimal binary value lengths where no length is above maxLength
+     * (package-merge algorithm). Leaves are repeatedly paired into packages over
+     * maxLength levels, each level merging the packages with the leaves again;
+     * the length of a character is the number of times its leaf is used
+     * in the cheapest 2n - 2 items of the last level
+     *
+     * @param frequencyList frequency of each character
+     * @param maxLength maximum length of a binary value
+     * @return length of the binary value of each character (0 -> frequency of 0)
+     */
+    public static int[] limitCodeLengths(int[] frequencyList, int maxLength) {
+        int[] lengths = new int[frequencyList.length];
+
+        // characters with frequency > 0, sorted by frequency
+        int leafCount = 0;
+        for (int frequency : frequencyList)
+            if (frequency > 0) leafCount++;
+        // (frequency and character packed into one long, so large alphabets sort without boxing)
+        long[] packed = new long[leafCount];
+        for (int symbol = 0, i = 0; symbol < frequencyList.length; symbol++)
+            if (frequencyList[symbol] > 0) packed[i++] = (long) frequencyList[symbol] << 32 | symbol;
+        Arrays.sort(packed);
+        int[] order = new int[leafCount];
+        for (int i = 0; i < leafCount; i++)
+            order[i] = (int) packed[i];
+
+        if (leafCount == 1) // extreme case, a single character still needs 1 bit
+            lengths[order[0]] = 1;
+        if (leafCount <= 1)
+            return lengths;
+        if (maxLength < 1 || maxLength < 32 - Integer.numberOfLeadingZeros(leafCount - 1))
+            throw new IllegalArgumentException(leafCount + " characters do not fit in " + maxLength + " bits");
+
+        long[] leafWeights = new long[leafCount];
+        for (int i = 0; i < leafCount; i++)
+            leafWeights[i] = frequencyList[order[i]];
+
+        // isLeaf[level][i] -> if item i of the level is a leaf (otherwise a package)
+        // level maxLength - 1 contains only the leaves
+        boolean[][] isLeaf = new boolean[maxLength][];
+        long[] weights = leafWeights.clone();
+        isLeaf[maxLength - 1] = new boolean[leafCount];
+        Arrays.fill(isLeaf[maxLength - 1], true);
+
+        for (int level = maxLength - 2; level >= 0; level--) {
+            // pairing the items of the previous level into packages
+            int packageCount = weights.length / 2;
+            long[] mergedWeights = new long[leafCount + packageCount];
+            isLeaf[level] = new boolean[leafCount + packageCount];
+
+            // merging the leaves with the packages (both are sorted)
+            int leaf = 0, pack = 0;
+            for (int i = 0; i < mergedWeights.length; i++) {
+                long packageWeight = pack < packageCount
+                        ? weights[2 * pack] + weights[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < leafCount && leafWeights[leaf] <= packageWeight) {
+                    mergedWeights[i] = leafWeights[leaf++];
+                    isLeaf[level][i] = true;
+                } else {
+                    mergedWeights[i] = packageWeight;
+                    pack++;
+                }
+            }
+            weights = mergedWeights;
+        }
+
+        // taking the cheapest 2n - 2 items, following the packages through every level
+        int taken = 2 * leafCount - 2;
+        for (int level = 0; level < maxLength && taken > 0; level++) {
+            int packages = 0;
+            for (int i = 0, leaf = 0; i < taken; i++) {
+                if (isLeaf[level][i])
+                    lengths[order[leaf++]]++; // leaves are taken in frequency order
+                else
+                    packages++;
+            }
+            taken = 2 * packages; // every package is made of 2 items of the next level
+        } return lengths;
     }
 
     /**
@@ -0,0 +1,379 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * WordModel object holds the vocabulary and CodeTable of content compressed in word mode.
+ * Content is split into tokens: runs of word bytes (ASCII letters and digits, bytes of
+ * multi-byte UTF-8 characters) and runs of other bytes, each at most MAX_TOKEN_LENGTH bytes.
+ * Every distinct token is a character of one large alphabet, so that a single binary value
+ * stands for a whole word and decoding emits a whole token per binary value.
+ * Stored content: one block (see HuffmanBlock.writeBlock) holding
+ * - number of tokens in the vocabulary (int)
+ * - each token in sorted order: bytes shared with the previous token (byte),
+ *   number of other bytes (byte), other bytes, length of its binary value (byte)
+ */
+public class WordModel {
+    // static attributes
+    // first 4 bytes of every file compressed in word mode ("HUFW")
+    public static final int WORD_MAGIC = 0x48554657;
+    // maximum length of a binary value (enough for millions of tokens)
+    public static final int MAX_CODE_LENGTH = 32;
+    // longest token (longer runs are split)
+    private static final int MAX_TOKEN_LENGTH = 255;
+
+    // instance attributes
+    // bytes of every token of the vocabulary, in sorted order
+    private final byte[] tokenBytes;
+    // index of the first byte of each token in tokenBytes (one more than the number of tokens)
+    private final int[] tokenStarts;
+    // CodeTable of the vocabulary (token index -> binary value)
+    private final CodeTable codeTable;
+    // tokens of the content (only kept while encoding) and their number
+    private final int[] tokens;
+    private final int tokenCount;
+    // number of bits of the binary values of the content (0 if read from a file)
+    private final long encodedLength;
+
+    /**
+     * Used to build the WordModel of given content
+     *
+     * @param content content to model, from its position to its limit (not moved)
+     * @return built WordModel
+     */
+    public static WordModel build(ByteBuffer content) {
+        // 1. splitting content into tokens, every distinct token gets an index
+        Vocabulary vocabulary = new Vocabulary();
+        int[] tokens = new int[Math.max(16, content.remaining() / 4)];
+        int tokenCount = 0;
+        for (int start = content.position(); start < content.limit(); ) {
+            int end = tokenEnd(content, start);
+            if (tokenCount == tokens.length)
+                tokens = Arrays.copyOf(tokens, 2 * tokens.length);
+            tokens[tokenCount++] = vocabulary.add(content, start, end);
+            start = end;
+        }
+
+        // 2. sorting the vocabulary (sorted tokens share their first bytes when stored)
+        int size = vocabulary.size();
+        Integer[] order = vocabulary.sortedOrder();
+        int[] sortedIndex = new int[size];
+        byte[] tokenBytes = new byte[vocabulary.byteCount()];
+        int[] tokenStarts = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            sortedIndex[order[i]] = i;
+            tokenStarts[i + 1] = vocabulary.copyTo(order[i], tokenBytes, tokenStarts[i]);
+        }
+
+        // 3. counting the tokens, building the CodeTable over the whole vocabulary
+        int[] frequencyList = new int[size];
+        for (int i = 0; i < tokenCount; i++) {
+            tokens[i] = sortedIndex[tokens[i]];
+            frequencyList[tokens[i]]++;
+        }
+        CodeTable codeTable = CodeTable.fromLengths(HuffmanCompress.setCodeLengths(frequencyList, MAX_CODE_LENGTH));
+        return new WordModel(tokenBytes, tokenStarts, codeTable, tokens, tokenCount,
+                codeTable.getEncodedLength(frequencyList));
+    }
+
+    /**
+     * Finds the end of the token starting at given index
+     *
+     * @param content content to split
+     * @param start index of the first byte of the token
+     * @return index after the last byte of the token
+     */
+    private static int tokenEnd(ByteBuffer content, int start) {
+        boolean word = isWordByte(content.get(start));
+        int end = start + 1;
+        int limit = Math.min(content.limit(), start + MAX_TOKEN_LENGTH);
+        while (end < limit && isWordByte(content.get(end)) == word)
+            end++;
+        return end;
+    }
+
+    /**
+     * @param b byte to check
+     * @return true if b is an ASCII letter or digit, or part of a multi-byte UTF-8 character
+     */
+    private static boolean isWordByte(byte b) {
+        return b < 0 || b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9';
+    }
+
+    /**
+     * Used to pack the binary values of the tokens of the content
+     * @param writer BitWriter to pack the binary values into
+     */
+    public void encode(BitWriter writer) {
+        for (int i = 0; i < tokenCount; i++)
+            writer.writeBits(codeTable.getCode(tokens[i]), codeTable.getLength(tokens[i]));
+    }
+
+    /**
+     * Used to decode a known number of tokens into given array, one whole token per binary value
+     *
+     * @param reader BitReader positioned at the first binary value
+     * @param tokenCount number of tokens to decode
+     * @param output array to store the decoded bytes in (exactly as long as the decoded bytes)
+     * @throws IOException if a binary value is not in the CodeTable or the decoded tokens do not fill output exactly
+     */
+    public void decode(BitReader reader, int tokenCount, byte[] output) throws IOException {
+        HuffmanDecoder decoder = new HuffmanDecoder(codeTable);
+        int position = 0;
+        try {
+            for (int i = 0; i < tokenCount; i++) {
+                int token = decoder.decodeSymbol(reader);
+                int length = tokenStarts[token + 1] - tokenStarts[token];
+                if (length > output.length - position)
+                    throw new IOException("Compressed file is corrupted (too many bytes decoded)");
+                System.arraycopy(tokenBytes, tokenStarts[token], output, position, length);
+                position += length;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Compressed file is corrupted (invalid binary value)");
+        }
+        if (position != output.length)
+            throw new IOException("Compressed file is corrupted (too few bytes decoded)");
+    }
+
+    /**
+     * Used to store the vocabulary (and the length of each binary value) as one compressed block
+     *
+     * @param out stream to write into
+     * @return number of bytes written
+     * @throws IOException if the stream can not be written
+     */
+    public int writeTo(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream vocabularyBytes = new ByteArrayOutputStream();
+        DataOutputStream vocabularyOut = new DataOutputStream(vocabularyBytes);
+        int size = tokenStarts.length - 1;
+        vocabularyOut.writeInt(size);
+        for (int token = 0; token < size; token++) {
+            int shared = token == 0 ? 0 : Arrays.mismatch(tokenBytes, tokenStarts[token - 1], tokenStarts[token],
+                    tokenBytes, tokenStarts[token], tokenStarts[token + 1]);
+            int length = tokenStarts[token + 1] - tokenStarts[token];
+            shared = shared < 0 ? length : shared; // mismatch is -1 for equal ranges (not in a vocabulary)
+            vocabularyOut.writeByte(shared);
+            vocabularyOut.writeByte(length - shared);
+            vocabularyOut.write(tokenBytes, tokenStarts[token] + shared, length - shared);
+            vocabularyOut.writeByte(codeTable.getLength(token));
+        }
+        byte[] vocabulary = vocabularyBytes.toByteArray();
+        return HuffmanBlock.writeBlock(out, ByteBuffer.wrap(vocabulary), HuffmanCompress.MAX_CODE_LENGTH,
+                true, null, new BitWriter(vocabulary.length));
+    }
+
+    /**
+     * Used to read a WordModel stored by writeTo
+     *
+     * @param in buffer to read from (moved past the stored model)
+     * @return read WordModel
+     * @throws IOException if the stored model is not in the expected format
+     */
+    public static WordModel readFrom(ByteBuffer in) throws IOException {
+        // decoding the block holding the vocabulary
+        if (in.remaining() < 2 * Integer.BYTES)
+            throw new IOException("invalid vocabulary in given file");
+        int rawLength = in.getInt();
+        int restLength = in.getInt();
+        if (rawLength < Integer.BYTES || restLength < 0 || restLength > in.remaining())
+            throw new IOException("invalid vocabulary in given file");
+        ByteBuffer vocabulary = ByteBuffer.allocate(rawLength);
+        HuffmanBlock.decodeRest(in.slice(in.position(), restLength), rawLength, vocabulary, 0);
+        in.position(in.position() + restLength);
+
+        // rebuilding the tokens (each one shares its first bytes with the previous one)
+        int size = vocabulary.getInt();
+        if (size < 0 || size > vocabulary.remaining() / 3)
+            throw new IOException("invalid vocabulary in given file");
+        byte[] tokenBytes = new byte[rawLength];
+        int[] tokenStarts = new int[size + 1];
+        int[] lengths = new int[size];
+        try {
+            for (int token = 0; token < size; token++) {
+                int shared = vocabulary.get() & 0xFF;
+                int suffix = vocabulary.get() & 0xFF;
+                int start = tokenStarts[token];
+                if (token == 0 ? shared != 0 : shared > start - tokenStarts[token - 1])
+                    throw new IOException("invalid vocabulary in given file");
+                if (start + shared + suffix > tokenBytes.length)
+                    tokenBytes = Arrays.copyOf(tokenBytes, Math.max(2 * tokenBytes.length, start + shared + suffix));
+                if (shared > 0)
+                    System.arraycopy(tokenBytes, tokenStarts[token - 1], tokenBytes, start, shared);
+                vocabulary.get(tokenBytes, start + shared, suffix);
+                tokenStarts[token + 1] = start + shared + suffix;
+                lengths[token] = vocabulary.get() & 0xFF;
+            }
+            return new WordModel(tokenBytes, tokenStarts, CodeTable.fromLengths(lengths), null, 0, 0);
+        } catch (RuntimeException e) { // vocabulary ends early, or lengths do not form a prefix code
+            throw new IOException("invalid vocabulary in given file");
+        }
+    }
+
+    /**
+     * Used to check if given file was compressed in word mode
+     * @param file file to check
+     * @return true if the file starts with WORD_MAGIC, false otherwise
+     */
+    public static boolean isWordFile(TextFile file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file.getFilePath()))) {
+            return in.readInt() == WORD_MAGIC;
+        } catch (IOException e) { // file shorter than WORD_MAGIC (or can not be read)
+            return false;
+        }
+    }
+
+    /**
+     * Constructor for WordModel object
+     * @param tokenBytes bytes of every token of the vocabulary
+     * @param tokenStarts index of the first byte of each token in tokenBytes
+     * @param codeTable CodeTable of the vocabulary
+     * @param tokens tokens of the content (null if read from a file)
+     * @param tokenCount number of tokens of the content
+     * @param encodedLength number of bits of the binary values of the content
+     */
+    private WordModel(byte[] tokenBytes, int[] tokenStarts, CodeTable codeTable,
+                      int[] tokens, int tokenCount, long encodedLength) {
+        this.tokenBytes = tokenBytes;
+        this.tokenStarts = tokenStarts;
+        this.codeTable = codeTable;
+        this.tokens = tokens;
+        this.tokenCount = tokenCount;
+        this.encodedLength = encodedLength;
+    }
+
+    // getter methods
+    public int getTokenCount() { return tokenCount; }
+    public int getVocabularySize() { return tokenStarts.length - 1; }
+    public long getEncodedLength() { return encodedLength; }
+
+    /**
+     * Distinct tokens found while splitting content, looked up by their bytes
+     * (open addressing over token indices, the bytes are kept in one array)
+     */
+    private static class Vocabulary {
+        // bytes of every token (in order of first occurrence)
+        private byte[] bytes = new byte[1024];
+        // index of the first byte of each token in bytes (one more than the number of tokens)
+        private int[] starts = new int[257];
+        // number of tokens
+        private int size;
+        // token index + 1 of each slot (0 -> empty slot)
+        private int[] slots = new int[1024];
+
+        /**
+         * Used to find the index of a token, adding it if it is not in the vocabulary yet
+         *
+         * @param content content the token is in
+         * @param start index of the first byte of the token
+         * @param end index after the last byte of the token
+         * @return index of the token
+         */
+        int add(ByteBuffer content, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++)
+                hash = 31 * hash + content.get(i);
+            hash *= 0x9E3779B1;
+
+            int mask = slots.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int token = slots[slot] - 1;
+                if (token < 0) { // not in the vocabulary yet
+                    slots[slot] = addBytes(content, start, end) + 1;
+                    if (2 * size > slots.length)
+                        grow();
+                    return size - 1;
+                }
+                if (equals(token, content, start, end))
+                    return token;
+            }
+        }
+
+        /**
+         * Appends the bytes of a new token
+         * @return index of the new token
+         */
+        private int addBytes(ByteBuffer content, int start, int end) {
+            int length = end - start;
+            if (starts[size] + length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, starts[size] + length));
+            if (size + 1 == starts.length)
+                starts = Arrays.copyOf(starts, 2 * starts.length);
+            content.get(start, bytes, starts[size], length);
+            starts[size + 1] = starts[size] + length;
+            return size++;
+        }
+
+        /**
+         * @return true if the token has the same bytes as content from start to end
+         */
+        private boolean equals(int token, ByteBuffer content, int start, int end) {
+            if (starts[token + 1] - starts[token] != end - start)
+                return false;
+            for (int i = 0; i < end - start; i++) {
+                if (bytes[starts[token] + i] != content.get(start + i))
+                    return false;
+            } return true;
+        }
+
+        /**
+         * Doubles the number of slots, placing every token again
+         */
+        private void grow() {
+            slots = new int[2 * slots.length];
+            int mask = slots.length - 1;
+            for (int token = 0; token < size; token++) {
+                int hash = 0;
+                for (int i = starts[token]; i < starts[token + 1]; i++)
+                    hash = 31 * hash + bytes[i];
+                hash *= 0x9E3779B1;
+                int slot = hash & mask;
+                while (slots[slot] != 0)
+                    slot = (slot + 1) & mask;
+                slots[slot] = token + 1;
+            }
+        }
+
+        /**
+         * Sorts the tokens by their bytes (as unsigned bytes). Tokens are compared by their
+         * first 8 bytes packed into a long first, so that most comparisons read no token bytes
+         * @return index of each token in sorted order
+         */
+        Integer[] sortedOrder() {
+            long[] prefixes = new long[size];
+            Integer[] order = new Integer[size];
+            for (int token = 0; token < size; token++) {
+                for (int i = 0; i < Long.BYTES; i++) { // missing bytes are 0s (ties are compared in full)
+                    int index = starts[token] + i;
+                    prefixes[token] = prefixes[token] << Byte.SIZE
+                            | (index < starts[token + 1] ? bytes[index] & 0xFF : 0);
+                }
+                order[token] = token;
+            }
+            Arrays.sort(order, (first, second) -> {
+                int compared = Long.compareUnsigned(prefixes[first], prefixes[second]);
+                return compared != 0 ? compared : Arrays.compareUnsigned(bytes, starts[first], starts[first + 1],
+                        bytes, starts[second], starts[second + 1]);
+            });
+            return order;
+        }
+
+        /**
+         * Copies the bytes of a token into given array
+         * @return index after the copied bytes
+         */
+        int copyTo(int token, byte[] destination, int offset) {
+            int length = starts[token + 1] - starts[token];
+            System.arraycopy(bytes, starts[token], destination, offset, length);
+            return offset + length;
+        }
+
+        int size() { return size; }
+        int byteCount() { return starts[size]; }
+    }
+}